@@ -0,0 +1,172 @@
+package com.voltpay.reader.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.voltpay.reader.config.KafkaConfig;
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.serialization.ReadEventDeserializer;
+import org.apache.kafka.common.compress.Compression;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.record.TimestampType;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per event of the batch size and compression of the Kafka tuning profiles, without a broker.
+ * Events are appended to record batches as the producer does it and read back as the consumer does it, with the batch size and compression
+ * of the profile, read from its application-profile.yml. Without linger the batches are assumed to hold one event,
+ * which is what an idle producer sends. Events per batch and bytes per event are reported as secondary results of produce.
+ * The latency linger and fetch wait add needs a broker and isn't measured here.
+ * Run with gradle jmh -PjmhIncludes=KafkaTuningBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KafkaTuningBenchmark {
+
+    private static final String TOPIC = "read-topic";
+
+    private static final int EVENTS = 1000;
+
+    @Param({"default", "low-latency", "high-throughput"})
+    public String profile;
+
+    private List<byte[]> values;
+
+    private Compression compression;
+
+    private int eventsPerBatch;
+
+    private List<MemoryRecords> batches;
+
+    private final ReadEventDeserializer deserializer = new ReadEventDeserializer();
+
+    /**
+     * Batching of the profile, the same every invocation, reported next to the time per event.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class BatchCounters {
+
+        public int eventsPerBatch;
+
+        public double bytesPerEvent;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, Object> producer = child(tuning(profile), "producer");
+
+        // distinct ids and amounts, identical events would compress far better than real traffic
+        ObjectMapper objectMapper = new KafkaConfig().objectMapper();
+        Random random = new Random(42);
+        values = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            ReadEvent event = ReadEvent.builder()
+                .messageId(new UUID(random.nextLong(), random.nextLong()).toString())
+                .id("TRN-" + (100000000000000L + random.nextInt(Integer.MAX_VALUE)))
+                .createdAt(LocalDateTime.of(2025, 5, 3, 10, 15, 30).plusNanos(random.nextLong(86_400_000_000_000L)))
+                .updatedAt(LocalDateTime.of(2025, 5, 3, 10, 15, 31).plusNanos(random.nextLong(86_400_000_000_000L)))
+                .amount(BigDecimal.valueOf(random.nextLong(100_000_000_000L), 6))
+                .status(2)
+                .currency("EUR")
+                .custId(random.nextLong(1_000_000L))
+                .type("BWI")
+                .comment("payment for invoice 2025-05-" + random.nextInt(10000))
+                .version(random.nextInt(5))
+                .build();
+            values.add(objectMapper.writeValueAsBytes(event));
+        }
+        int averageSize = values.stream().mapToInt(value -> value.length).sum() / EVENTS;
+
+        int lingerMs = ((Number) producer.get("linger-ms")).intValue();
+        int batchSize = ((Number) producer.get("batch-size")).intValue();
+        eventsPerBatch = lingerMs == 0 ? 1 : Math.max(1, batchSize / averageSize);
+        compression = Compression.of((String) producer.get("compression-type")).build();
+        batches = batch();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public List<MemoryRecords> produce(BatchCounters counters) {
+        List<MemoryRecords> result = batch();
+        long bytes = 0;
+        for (MemoryRecords batch : result) {
+            bytes += batch.sizeInBytes();
+        }
+        counters.eventsPerBatch = eventsPerBatch;
+        counters.bytesPerEvent = (double) bytes / EVENTS;
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void consume(Blackhole blackhole) {
+        RecordHeaders headers = new RecordHeaders();
+        for (MemoryRecords batch : batches) {
+            for (Record record : batch.records()) {
+                blackhole.consume(deserializer.deserialize(TOPIC, headers, record.value()));
+            }
+        }
+    }
+
+    private List<MemoryRecords> batch() {
+        List<MemoryRecords> result = new ArrayList<>();
+        for (int from = 0; from < EVENTS; from += eventsPerBatch) {
+            int count = Math.min(eventsPerBatch, EVENTS - from);
+            MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(count * values.get(from).length + 1024), compression,
+                TimestampType.CREATE_TIME, from);
+            for (int i = from; i < from + count; i++) {
+                builder.append(0L, null, values.get(i));
+            }
+            result.add(builder.build());
+        }
+        return result;
+    }
+
+    private static Map<String, Object> tuning(String profile) {
+        String file = "default".equals(profile) ? "/application.yml" : "/application-" + profile + ".yml";
+        try (InputStream in = KafkaTuningBenchmark.class.getResourceAsStream(file)) {
+            Map<String, Object> root = new Yaml().load(in);
+            return child(child(root, "kafka"), "tuning");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> child(Map<String, Object> map, String key) {
+        return (Map<String, Object>) map.get(key);
+    }
+}
@@ -0,0 +1,120 @@
+package com.voltpay.reader.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.voltpay.reader.config.KafkaConfig;
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.serialization.ReadEventEncoding;
+import com.voltpay.reader.serialization.ReadEventErrorHandlingDeserializer;
+import com.voltpay.reader.serialization.ReadEventSerializer;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserialization of one read-topic record, the ReadEventDeserializer against the JsonDeserializer it replaced,
+ * and the binary encoding against JSON. The JSON record is serialized like the writer does it, with the type header and the dates as arrays.
+ * The size of the record each ReadEventDeserializer benchmark decodes is reported as its bytes secondary result.
+ * Run with gradle jmh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadEventDeserializerBenchmark {
+
+    private static final String TOPIC = "read-topic";
+
+    private byte[] record;
+
+    private Headers headers;
+
+    private byte[] binaryRecord;
+
+    private Headers binaryHeaders;
+
+    private JsonDeserializer<Object> jsonDeserializer;
+
+    private ReadEventErrorHandlingDeserializer readEventDeserializer;
+
+    /**
+     * Size of the decoded record, the same every invocation, reported next to the time it takes.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class RecordSize {
+
+        public int bytes;
+    }
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new KafkaConfig().objectMapper();
+        ReadEvent event = ReadEvent.builder()
+            .messageId("5f0c6a53-4d0e-4c1f-9d57-2b9c3c1f0a11")
+            .id("TRN-000000000123456")
+            .createdAt(LocalDateTime.of(2025, 5, 3, 10, 15, 30, 123456000))
+            .updatedAt(LocalDateTime.of(2025, 5, 3, 10, 15, 31, 654321000))
+            .amount(new BigDecimal("1234.567890"))
+            .status(2)
+            .currency("EUR")
+            .custId(123456789L)
+            .type("BWI")
+            .comment("payment for invoice 2025-05-0001")
+            .version(3)
+            .build();
+
+        headers = new RecordHeaders();
+        try (JsonSerializer<ReadEvent> serializer = new JsonSerializer<>(objectMapper)) {
+            record = serializer.serialize(TOPIC, headers, event);
+        }
+
+        // same configuration as the consumer factory had, the type header is kept as the same headers are used every time
+        jsonDeserializer = new JsonDeserializer<>(Object.class, objectMapper);
+        jsonDeserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "*", JsonDeserializer.TYPE_MAPPINGS,
+            "com.voltpay.voltpay_writer.pojo.ReadEvent:com.voltpay.reader.pojo.ReadEvent",
+            JsonDeserializer.REMOVE_TYPE_INFO_HEADERS, false), false);
+        readEventDeserializer = new ReadEventErrorHandlingDeserializer();
+
+        binaryHeaders = new RecordHeaders();
+        try (ReadEventSerializer serializer = new ReadEventSerializer(ReadEventEncoding.BINARY, objectMapper)) {
+            binaryRecord = serializer.serialize(TOPIC, binaryHeaders, event);
+        }
+    }
+
+    @Benchmark
+    public Object jsonDeserializer() {
+        return jsonDeserializer.deserialize(TOPIC, headers, ByteBuffer.wrap(record));
+    }
+
+    @Benchmark
+    public ReadEvent readEventDeserializer(RecordSize size) {
+        size.bytes = record.length;
+        return readEventDeserializer.deserialize(TOPIC, headers, ByteBuffer.wrap(record));
+    }
+
+    @Benchmark
+    public ReadEvent readEventDeserializerBinary(RecordSize size) {
+        size.bytes = binaryRecord.length;
+        return readEventDeserializer.deserialize(TOPIC, binaryHeaders, ByteBuffer.wrap(binaryRecord));
+    }
+}
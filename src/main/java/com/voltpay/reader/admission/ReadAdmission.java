@@ -0,0 +1,77 @@
+package com.voltpay.reader.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of the reader pool.
+ * At most graphql.admission.max-concurrent reads run at once, the rest wait in line for up to max-wait-ms,
+ * on virtual threads waiting is cheap, so a burst of slow queries queues up instead of piling onto Hikari.
+ * Once max-queued reads are waiting or a read waited too long it is rejected, so the line can't grow without bound.
+ */
+@Component
+public class ReadAdmission {
+
+    private final Semaphore permits;
+
+    private final int maxQueued;
+
+    private final long maxWaitMs;
+
+    private final Counter rejected;
+
+    public ReadAdmission(MeterRegistry registry,
+                         @Value("${graphql.admission.max-concurrent:10}") int maxConcurrent,
+                         @Value("${graphql.admission.max-queued:1000}") int maxQueued,
+                         @Value("${graphql.admission.max-wait-ms:2000}") long maxWaitMs) {
+        // fair, reads are admitted in the order they arrived
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxQueued = maxQueued;
+        this.maxWaitMs = maxWaitMs;
+        this.rejected = Counter.builder("reader.graphql.admission.rejected")
+            .description("GraphQL reads rejected because too many were running or waiting")
+            .register(registry);
+        Gauge.builder("reader.graphql.admission.queued", permits, Semaphore::getQueueLength)
+            .description("GraphQL reads waiting for a reader connection")
+            .register(registry);
+        Gauge.builder("reader.graphql.admission.running", permits, semaphore -> maxConcurrent - semaphore.availablePermits())
+            .description("GraphQL reads running against the reader pool")
+            .register(registry);
+    }
+
+    /**
+     * Run the read once it is admitted.
+     *
+     * @param read the database read
+     * @param <T> result type
+     * @return result of the read
+     * @throws ReadRejectedException if the read wasn't admitted
+     */
+    public <T> T call(Supplier<T> read) {
+        if (permits.getQueueLength() >= maxQueued) {
+            rejected.increment();
+            throw new ReadRejectedException("Too many reads are waiting, try again later");
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new ReadRejectedException("Read waited more than " + maxWaitMs + "ms, try again later");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ReadRejectedException("Interrupted while waiting to read");
+        }
+        try {
+            return read.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
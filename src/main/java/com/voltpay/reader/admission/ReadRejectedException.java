@@ -0,0 +1,11 @@
+package com.voltpay.reader.admission;
+
+/**
+ * The reader is overloaded, the client is expected to retry later.
+ */
+public class ReadRejectedException extends RuntimeException {
+
+    public ReadRejectedException(String message) {
+        super(message);
+    }
+}
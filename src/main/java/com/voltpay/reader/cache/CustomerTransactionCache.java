@@ -0,0 +1,169 @@
+package com.voltpay.reader.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.voltpay.reader.pojo.TransactionCursor;
+import com.voltpay.reader.pojo.TransactionFilter;
+import com.voltpay.reader.pojo.TransactionView;
+import com.voltpay.reader.repositories.TransactionColumn;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the transaction queries of the most active customers.
+ * Entries are grouped by customer, so a consumer which committed transactions for a customer drops all of its queries at once.
+ * A customer's queries are dropped at the latest graphql.transactions.cache.ttl after they were first cached,
+ * that is the bound on how stale a read can be, also for writes committed by other instances.
+ * The queries are read from a replica, which may not have replayed a commit yet, so a customer's results read within
+ * graphql.transactions.cache.replica-lag-window after it was invalidated are returned but not cached.
+ */
+@Component
+public class CustomerTransactionCache {
+
+    /**
+     * Everything a customer query result depends on besides the customer.
+     */
+    public record Query(Set<TransactionColumn> columns, TransactionFilter filter, TransactionCursor after, int limit) {
+    }
+
+    private final boolean enabled;
+
+    private final int maxQueriesPerCustomer;
+
+    private final Cache<Long, Map<Query, List<TransactionView>>> cache;
+
+    // customers invalidated within the replica lag window, null without replicas, not bounded in size, a smaller one could forget
+    // a customer before its window ends
+    private final Cache<Long, Boolean> recentlyInvalidated;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter evictions;
+
+    public CustomerTransactionCache(MeterRegistry registry,
+                                    @Value("${graphql.transactions.cache.enabled:true}") boolean enabled,
+                                    @Value("${graphql.transactions.cache.max-customers:10000}") long maxCustomers,
+                                    @Value("${graphql.transactions.cache.max-queries-per-customer:16}") int maxQueriesPerCustomer,
+                                    @Value("${graphql.transactions.cache.ttl:30s}") Duration ttl,
+                                    @Value("${graphql.transactions.cache.replica-lag-window:0s}") Duration replicaLagWindow) {
+        this.enabled = enabled;
+        this.maxQueriesPerCustomer = maxQueriesPerCustomer;
+        this.hits = Counter.builder("reader.transactions.cache.hits")
+            .description("Customer queries answered from the cache")
+            .register(registry);
+        this.misses = Counter.builder("reader.transactions.cache.misses")
+            .description("Customer queries which went to the database")
+            .register(registry);
+        this.evictions = Counter.builder("reader.transactions.cache.evictions")
+            .description("Customers evicted from the cache because of its size or ttl")
+            .register(registry);
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxCustomers)
+            .expireAfterWrite(ttl)
+            .evictionListener((Long custId, Map<Query, List<TransactionView>> queries, RemovalCause cause) -> evictions.increment())
+            .build();
+        this.recentlyInvalidated = replicaLagWindow.isZero() ? null : Caffeine.newBuilder()
+            .expireAfterWrite(replicaLagWindow)
+            .build();
+        Gauge.builder("reader.transactions.cache.customers", cache, Cache::estimatedSize)
+            .description("Customers with cached queries")
+            .register(registry);
+    }
+
+    /**
+     * @param custId customer of the query
+     * @param query the rest of the query
+     * @param loader reads the query from the database on a miss
+     * @return the cached result or the loaded one
+     */
+    public List<TransactionView> get(Long custId, Query query, Supplier<List<TransactionView>> loader) {
+        if (!enabled || custId == null) {
+            return loader.get();
+        }
+        return getAll(List.of(custId), query, missed -> Map.of(custId, loader.get())).get(custId);
+    }
+
+    /**
+     * Same query for several customers, the customers which aren't cached are loaded at once.
+     *
+     * @param custIds customers of the query
+     * @param query the rest of the query
+     * @param loader reads the query of the given customers from the database, a customer without transactions may be left out
+     * @return result of the query per customer, empty for a customer without transactions
+     */
+    public Map<Long, List<TransactionView>> getAll(Collection<Long> custIds, Query query,
+                                                   Function<Set<Long>, Map<Long, List<TransactionView>>> loader) {
+        if (!enabled) {
+            Map<Long, List<TransactionView>> loaded = loader.apply(new HashSet<>(custIds));
+            Map<Long, List<TransactionView>> result = new HashMap<>();
+            custIds.forEach(custId -> result.put(custId, loaded.getOrDefault(custId, List.of())));
+            return result;
+        }
+
+        Map<Long, List<TransactionView>> result = new HashMap<>();
+        // taken before reading the database, if a customer is invalidated meanwhile its result only lands in the dropped map
+        Map<Long, Map<Query, List<TransactionView>>> missed = new HashMap<>();
+        for (Long custId : custIds) {
+            Map<Query, List<TransactionView>> queries = cache.get(custId, id -> new ConcurrentHashMap<>());
+            List<TransactionView> cached = queries.get(query);
+            if (cached != null) {
+                hits.increment();
+                result.put(custId, cached);
+            } else {
+                misses.increment();
+                missed.put(custId, queries);
+            }
+        }
+        if (missed.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, List<TransactionView>> loaded = loader.apply(missed.keySet());
+        missed.forEach((custId, queries) -> {
+            List<TransactionView> transactions = List.copyOf(loaded.getOrDefault(custId, List.of()));
+            if (queries.size() < maxQueriesPerCustomer && !isRecentlyInvalidated(custId)) {
+                queries.put(query, transactions);
+            }
+            result.put(custId, transactions);
+        });
+        return result;
+    }
+
+    /**
+     * Drop the customer's queries, called once transactions of the customer are committed.
+     *
+     * @param custId customer id
+     */
+    public void invalidate(Long custId) {
+        if (enabled && custId != null) {
+            if (recentlyInvalidated != null) {
+                recentlyInvalidated.put(custId, Boolean.TRUE);
+            }
+            cache.invalidate(custId);
+        }
+    }
+
+    /**
+     * A replica may still return the customer's transactions as they were before the invalidation.
+     */
+    private boolean isRecentlyInvalidated(Long custId) {
+        return recentlyInvalidated != null && recentlyInvalidated.getIfPresent(custId) != null;
+    }
+}
@@ -0,0 +1,72 @@
+package com.voltpay.reader.config;
+
+import com.voltpay.reader.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * Pool of the consumers, the clean up job, JPA and liquibase, always the primary, configured by spring.datasource.hikari.
+     * Has to be declared, Spring Boot only creates it when there is no other DataSource.
+     */
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Settings of every reader pool, graphql.datasource.hikari.
+     */
+    @Bean
+    @ConfigurationProperties("graphql.datasource.hikari")
+    public HikariConfig readerPoolConfig() {
+        return new HikariConfig();
+    }
+
+    /**
+     * DataSource of the GraphQL reads, routed over graphql.datasource.replica-urls, the primary when there are none.
+     * Each replica and the primary get their own reader pool, so slow queries can use up only those, never the consumers' connections.
+     * Replicas use the credentials of spring.datasource.
+     */
+    @Bean
+    public ReplicaRoutingDataSource readerDataSource(DataSourceProperties properties, HikariConfig readerPoolConfig,
+                                                     @Value("${graphql.datasource.replica-urls:}") List<String> replicaUrls,
+                                                     @Value("${graphql.datasource.max-replica-lag-ms:0}") long maxReplicaLagMs) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            String name = "replica-" + (i + 1);
+            replicas.put(name, readerPool(properties, readerPoolConfig, replicaUrls.get(i), name));
+        }
+        DataSource primary = readerPool(properties, readerPoolConfig, properties.determineUrl(), ReplicaRoutingDataSource.PRIMARY);
+        return new ReplicaRoutingDataSource(primary, replicas, maxReplicaLagMs);
+    }
+
+    private static HikariDataSource readerPool(DataSourceProperties properties, HikariConfig readerPoolConfig, String url, String name) {
+        // connects on first use, a replica that is down doesn't stop the startup
+        HikariDataSource pool = new HikariDataSource();
+        readerPoolConfig.copyStateTo(pool);
+        pool.setJdbcUrl(url);
+        pool.setUsername(properties.determineUsername());
+        pool.setPassword(properties.determinePassword());
+        pool.setDriverClassName(properties.determineDriverClassName());
+        pool.setPoolName(Objects.requireNonNullElse(readerPoolConfig.getPoolName(), "HikariReader") + "-" + name);
+        pool.setReadOnly(true);
+        return pool;
+    }
+}
@@ -1,8 +1,17 @@
 package com.voltpay.reader.config;
 
+import com.voltpay.reader.admission.ReadRejectedException;
+import com.voltpay.reader.resolvers.InvalidArgumentException;
+import graphql.ErrorClassification;
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
 import graphql.scalars.ExtendedScalars;
+import graphql.schema.DataFetchingEnvironment;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.graphql.execution.DataFetcherExceptionResolver;
+import org.springframework.graphql.execution.DataFetcherExceptionResolverAdapter;
+import org.springframework.graphql.execution.ErrorType;
 import org.springframework.graphql.execution.RuntimeWiringConfigurer;
 
 @Configuration
@@ -15,4 +24,43 @@ public class GraphQLConfig {
             .scalar(ExtendedScalars.GraphQLLong)
             .scalar(JavaTimeScalar.LocalDateTime);
     }
+
+    /**
+     * Invalid arguments, e.g. a malformed cursor, are reported to the client as a bad request instead of an internal error.
+     * Only {@link InvalidArgumentException} is resolved, any other exception keeps its message out of the response.
+     */
+    @Bean
+    public DataFetcherExceptionResolver badRequestExceptionResolver() {
+        return new DataFetcherExceptionResolverAdapter() {
+            @Override
+            protected GraphQLError resolveToSingleError(Throwable ex, DataFetchingEnvironment env) {
+                if (!(ex instanceof InvalidArgumentException)) {
+                    return null;
+                }
+                return GraphqlErrorBuilder.newError(env)
+                    .errorType(ErrorType.BAD_REQUEST)
+                    .message(ex.getMessage())
+                    .build();
+            }
+        };
+    }
+
+    /**
+     * Reads rejected by the admission control are reported as UNAVAILABLE, so clients know to back off and retry.
+     */
+    @Bean
+    public DataFetcherExceptionResolver unavailableExceptionResolver() {
+        return new DataFetcherExceptionResolverAdapter() {
+            @Override
+            protected GraphQLError resolveToSingleError(Throwable ex, DataFetchingEnvironment env) {
+                if (!(ex instanceof ReadRejectedException)) {
+                    return null;
+                }
+                return GraphqlErrorBuilder.newError(env)
+                    .errorType(ErrorClassification.errorClassification("UNAVAILABLE"))
+                    .message(ex.getMessage())
+                    .build();
+            }
+        };
+    }
 }
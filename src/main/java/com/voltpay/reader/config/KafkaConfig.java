@@ -1,15 +1,23 @@
 package com.voltpay.reader.config;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.voltpay.reader.idempotency.IdempotencyFilterRebalanceListener;
+import com.voltpay.reader.metrics.ConsumerMetrics;
 import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.serialization.ReadEventEncoding;
+import com.voltpay.reader.serialization.ReadEventErrorHandlingDeserializer;
+import com.voltpay.reader.serialization.ReadEventSerializer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -17,18 +25,23 @@ import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaOperations;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ConsumerAwareRecordRecoverer;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.util.backoff.BackOff;
 import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
 
+@Slf4j
 @Configuration
 public class KafkaConfig {
 
@@ -47,33 +60,127 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.deadLetterThreads}")
     private Integer deadLetterThreads;
 
+    // tuning of fetches and DLT publishes, set together by the low-latency and high-throughput profiles
+    @Value("${kafka.tuning.profile:default}")
+    private String tuningProfile;
+
+    @Value("${kafka.tuning.consumer.max-poll-records:50}")
+    private Integer maxPollRecords;
+
+    @Value("${kafka.tuning.consumer.fetch-min-bytes:1}")
+    private Integer fetchMinBytes;
+
+    @Value("${kafka.tuning.consumer.fetch-max-bytes:52428800}")
+    private Integer fetchMaxBytes;
+
+    @Value("${kafka.tuning.consumer.max-partition-fetch-bytes:1048576}")
+    private Integer maxPartitionFetchBytes;
+
+    @Value("${kafka.tuning.consumer.fetch-max-wait-ms:500}")
+    private Integer fetchMaxWaitMs;
+
+    @Value("${kafka.tuning.producer.linger-ms:0}")
+    private Integer lingerMs;
+
+    @Value("${kafka.tuning.producer.batch-size:16384}")
+    private Integer batchSize;
+
+    @Value("${kafka.tuning.producer.compression-type:none}")
+    private String compressionType;
+
+    // json or binary, the consumers read both
+    @Value("${kafka.producer.encoding:json}")
+    private String producerEncoding;
+
+    // times the deserialization of read-topic and counts the records published to the DLT
+    @Autowired
+    private ConsumerMetrics consumerMetrics;
+
+    /**
+     * Consumer factory of read-topic.
+     * Values are read by the ReadEventDeserializer, which ignores the type headers of the writer,
+     * a record which isn't a valid ReadEvent is handed to the error handler and ends up in the DLT.
+     * The deserialization of every record is timed as the deserialize stage.
+     *
+     * @return consumer factory
+     */
     @Bean
-    public ConsumerFactory<String, Object> consumerFactory() {
+    public ConsumerFactory<String, ReadEvent> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
-        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 1);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ReadEventErrorHandlingDeserializer.class);
+        props.putAll(fetchTuning());
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
 
-        // Done in order to avoid
-        // The class 'com.voltpay.voltpay_writer.pojo.ReadEvent' is not in the trusted packages: [java.util, java.lang, java.lang.*]. If you believe this class is safe to deserialize, please provide its name.
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
-        props.put(JsonDeserializer.TYPE_MAPPINGS,
-            "com.voltpay.voltpay_writer.pojo.ReadEvent:com.voltpay.reader.pojo.ReadEvent");
-
         return new DefaultKafkaConsumerFactory<>(props,
             new StringDeserializer(),
-            new JsonDeserializer<>(Object.class, objectMapper()));
+            new ReadEventErrorHandlingDeserializer(consumerMetrics));
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, ReadEvent> kafkaListenerContainerFactory(KafkaTemplate<String, ReadEvent> kafkaTemplate) {
+    public ConcurrentKafkaListenerContainerFactory<String, ReadEvent> kafkaListenerContainerFactory(KafkaTemplate<String, ReadEvent> kafkaTemplate,
+        IdempotencyFilterRebalanceListener rebalanceListener) {
         ConcurrentKafkaListenerContainerFactory<String, ReadEvent> factory =
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+        factory.setBatchListener(false);
+        factory.setConcurrency(consumerThreads);
+
+        factory.setCommonErrorHandler(errorHandler(kafkaTemplate));
+
+        return factory;
+    }
+
+    /**
+     * Container factory for consuming a whole poll at once, used when kafka.consumer.mode is batch or bulk.
+     * Offsets are committed once per batch, after the listener returns.
+     * A BatchListenerFailedException thrown by the listener commits the offsets before the failed record
+     * and sends only the failed record to the DLT.
+     *
+     * @param kafkaTemplate template for publishing to the DLT
+     * @param rebalanceListener warms up the idempotency filter of the assigned partitions
+     * @return batch container factory
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, ReadEvent> batchKafkaListenerContainerFactory(
+        KafkaTemplate<String, ReadEvent> kafkaTemplate, IdempotencyFilterRebalanceListener rebalanceListener) {
+        ConcurrentKafkaListenerContainerFactory<String, ReadEvent> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+        factory.setBatchListener(true);
+        factory.setConcurrency(consumerThreads);
+
+        factory.setCommonErrorHandler(errorHandler(kafkaTemplate));
+
+        return factory;
+    }
+
+    /**
+     * Container factory for the key-ordered parallel consumer, used when kafka.consumer.mode is parallel.
+     * The listener hands each record to a lane and acknowledges it once the lane is done, possibly out of order.
+     * With async acks the container commits the offset of a partition only up to its lowest record not yet acknowledged
+     * and pauses the consumer until all records of a poll are acknowledged.
+     *
+     * @param kafkaTemplate template for publishing to the DLT
+     * @param rebalanceListener warms up the idempotency filter of the assigned partitions
+     * @return parallel container factory
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, ReadEvent> parallelKafkaListenerContainerFactory(
+        KafkaTemplate<String, ReadEvent> kafkaTemplate, IdempotencyFilterRebalanceListener rebalanceListener) {
+        ConcurrentKafkaListenerContainerFactory<String, ReadEvent> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
         factory.setBatchListener(false);
         factory.setConcurrency(consumerThreads);
 
@@ -85,18 +192,37 @@ public class KafkaConfig {
     /**
      * Error handler which publishes the event to dead letter after retrying once.
      * Retry occurs after 1 second of failure.
+     * Records which failed deserialization aren't retried and are published as their original bytes.
      *
      * @param template template for publishing
      * @return error handler
      */
     @Bean
     public DefaultErrorHandler errorHandler(KafkaTemplate<String, ReadEvent> template) {
-        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(template,
-            (record, exception) -> new TopicPartition("read-dlt", record.partition()));
-
         BackOff backOff = new FixedBackOff(1000L, 1);
 
-        return new DefaultErrorHandler(recoverer, backOff);
+        return new DefaultErrorHandler(deadLetterRecoverer(template), backOff);
+    }
+
+    /**
+     * Publishes a failed record to the same partition of read-dlt and counts it.
+     *
+     * @param template template for publishing
+     * @return dead letter recoverer
+     */
+    @Bean
+    public ConsumerAwareRecordRecoverer deadLetterRecoverer(KafkaTemplate<String, ReadEvent> template) {
+        // the more specific type first, the recoverer takes the first template whose type matches the value
+        Map<Class<?>, KafkaOperations<?, ?>> templates = new LinkedHashMap<>();
+        templates.put(byte[].class, deadLetterBytesTemplate());
+        templates.put(ReadEvent.class, template);
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(templates,
+            (record, exception) -> new TopicPartition("read-dlt", record.partition()));
+        // only counted once published, a failed publish throws and the error handler retries the record
+        return (record, consumer, exception) -> {
+            recoverer.accept(record, consumer, exception);
+            consumerMetrics.deadLettered();
+        };
     }
 
     @Bean
@@ -104,16 +230,16 @@ public class KafkaConfig {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
-        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 1);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ReadEventErrorHandlingDeserializer.class);
+        props.putAll(fetchTuning());
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
         props.put(ConsumerConfig.GROUP_ID_CONFIG, dltGroupId);
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
 
+        // records which can't be deserialized are logged and skipped by the error handler, there is no DLT of the DLT
         return new DefaultKafkaConsumerFactory<>(props,
             new StringDeserializer(),
-            new JsonDeserializer<>(ReadEvent.class, objectMapper()));
+            new ReadEventErrorHandlingDeserializer());
     }
 
     @Bean
@@ -139,11 +265,12 @@ public class KafkaConfig {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ReadEventSerializer.class);
+        configProps.putAll(producerTuning());
 
         return new DefaultKafkaProducerFactory<>(configProps,
             new StringSerializer(),
-            new org.springframework.kafka.support.serializer.JsonSerializer<>(objectMapper()));
+            new ReadEventSerializer(ReadEventEncoding.valueOf(producerEncoding.toUpperCase(Locale.ROOT)), objectMapper()));
     }
 
     @Bean
@@ -151,6 +278,48 @@ public class KafkaConfig {
         return new KafkaTemplate<>(readProducerFactory());
     }
 
+    /**
+     * Template for publishing records which couldn't be deserialized, their value is kept as it was received.
+     *
+     * @return byte[] template
+     */
+    @Bean
+    public KafkaTemplate<String, byte[]> deadLetterBytesTemplate() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.putAll(producerTuning());
+
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(configProps,
+            new StringSerializer(),
+            new ByteArraySerializer()));
+    }
+
+    /**
+     * Log the effective tuning once at startup, the profiles set the values together and a single override is easy to miss.
+     */
+    @PostConstruct
+    public void logTuning() {
+        log.info("Kafka tuning profile {}: consumer {} max.poll.records={}, producer {}", tuningProfile, fetchTuning(), maxPollRecords,
+            producerTuning());
+    }
+
+    private Map<String, Object> fetchTuning() {
+        Map<String, Object> props = new TreeMap<>();
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
+        props.put(ConsumerConfig.FETCH_MAX_BYTES_CONFIG, fetchMaxBytes);
+        props.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, maxPartitionFetchBytes);
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
+        return props;
+    }
+
+    private Map<String, Object> producerTuning() {
+        Map<String, Object> props = new TreeMap<>();
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        return props;
+    }
+
     @Bean
     public ObjectMapper objectMapper() {
         ObjectMapper mapper = new ObjectMapper();
@@ -0,0 +1,318 @@
+package com.voltpay.reader.consumer;
+
+import com.voltpay.reader.cache.CustomerTransactionCache;
+import com.voltpay.reader.entities.Idempotency;
+import com.voltpay.reader.entities.Transaction;
+import com.voltpay.reader.idempotency.IdempotencyFilter;
+import com.voltpay.reader.metrics.ConsumerMetrics;
+import com.voltpay.reader.metrics.Stage;
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.repositories.BulkIngestRepository;
+import com.voltpay.reader.repositories.BulkMergeResult;
+import com.voltpay.reader.repositories.IdempotencyRepository;
+import com.voltpay.reader.repositories.TransactionKey;
+import com.voltpay.reader.repositories.TransactionRepository;
+import com.voltpay.reader.repositories.WriteOutcome;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+// Same reasoning as the Read Consumer, never run together with the Dead Letter consumer
+@ConditionalOnExpression("!${kafka.dlt.enabled} and ('${kafka.consumer.mode:record}' == 'batch' or '${kafka.consumer.mode:record}' == 'bulk')")
+public class BatchReadConsumer {
+
+    private static final String BULK = "bulk";
+
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(BatchReadConsumer.class);
+
+    // a missing version is never newer, as in the upsert where comparing with NULL doesn't update
+    private static final Comparator<ReadEvent> VERSION_ORDER =
+        Comparator.comparing(ReadEvent::getVersion, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final TransactionRepository transactionRepository;
+
+    private final IdempotencyRepository idempotencyRepository;
+
+    private final BulkIngestRepository bulkIngestRepository;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final ConsumerMetrics consumerMetrics;
+
+    private final IdempotencyFilter idempotencyFilter;
+
+    private final CustomerTransactionCache customerTransactionCache;
+
+    private final WriteConcurrencyController writeConcurrencyController;
+
+    // copy into staging tables and merge instead of the batched inserts, for replays and backfills
+    private final boolean bulk;
+
+    public BatchReadConsumer(TransactionRepository transactionRepository,
+                             IdempotencyRepository idempotencyRepository,
+                             BulkIngestRepository bulkIngestRepository,
+                             PlatformTransactionManager transactionManager,
+                             ConsumerMetrics consumerMetrics,
+                             IdempotencyFilter idempotencyFilter,
+                             CustomerTransactionCache customerTransactionCache,
+                             WriteConcurrencyController writeConcurrencyController,
+                             @Value("${kafka.consumer.mode:record}") String mode) {
+        this.transactionRepository = transactionRepository;
+        this.idempotencyRepository = idempotencyRepository;
+        this.bulkIngestRepository = bulkIngestRepository;
+        this.transactionManager = transactionManager;
+        this.consumerMetrics = consumerMetrics;
+        this.idempotencyFilter = idempotencyFilter;
+        this.customerTransactionCache = customerTransactionCache;
+        this.writeConcurrencyController = writeConcurrencyController;
+        this.bulk = BULK.equals(mode);
+    }
+
+    /**
+     * Consumes a whole poll at once.
+     * Valid events are persisted with one batched insert per table in a single DB transaction,
+     * offsets are committed by the container once the method returns.
+     * Every message id is recorded, but of several versions of the same transaction only the highest one is written.
+     * A transaction already stored with the same or a higher version isn't overwritten and is counted as stale.
+     * In bulk mode the events are streamed with COPY into staging tables and merged with one statement per table instead,
+     * already processed messages are skipped by the merge, so the offsets of a replay are committed only after it is merged.
+     * If the batch fails we fall back to persisting event by event to find the record that caused it,
+     * duplicates are counted and skipped, the first failing record is reported so that only it ends up in the DLT.
+     * A record which couldn't be deserialized is reported the same way once the records before it are persisted,
+     * the records after it are consumed again.
+     *
+     * @param records records from one poll
+     */
+    @KafkaListener(topics = "read-topic", containerFactory = "batchKafkaListenerContainerFactory")
+    public void processMessages(List<ConsumerRecord<String, ReadEvent>> records) {
+        int undeserializable = firstUndeserializable(records);
+        List<ConsumerRecord<String, ReadEvent>> persisted = undeserializable < 0 ? records : records.subList(0, undeserializable);
+        persist(persisted.stream().map(ConsumerRecord::value).toList(), persisted.stream().map(ConsumerRecord::partition).toList());
+        if (undeserializable >= 0) {
+            ConsumerRecord<String, ReadEvent> consumerRecord = records.get(undeserializable);
+            // not retried by the error handler, published to the DLT as the original bytes
+            throw new BatchListenerFailedException("Failed to deserialize record at offset " + consumerRecord.offset()
+                + " of partition " + consumerRecord.partition(),
+                SerializationUtils.getExceptionFromHeader(consumerRecord, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR),
+                undeserializable);
+        }
+    }
+
+    /**
+     * The ErrorHandlingDeserializer leaves a null value and the exception in a header, only record listeners are checked for it
+     * by the container, a batch listener has to look itself.
+     *
+     * @return index of the first record which couldn't be deserialized, -1 if there is none
+     */
+    private static int firstUndeserializable(List<ConsumerRecord<String, ReadEvent>> records) {
+        for (int i = 0; i < records.size(); i++) {
+            if (records.get(i).headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void persist(List<ReadEvent> events, List<Integer> partitions) {
+        List<Integer> indexes = newIndexes(events, partitions);
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        TransactionStatus status = transactionManager.getTransaction(transactionDefinition("read-transaction-batch"));
+        long begun = System.nanoTime();
+        consumerMetrics.stage(Stage.CONNECTION, begun - start);
+        try {
+            List<Idempotency> idempotencies = indexes.stream().map(i -> ReadConsumer.toIdempotency(events.get(i), partitions.get(i))).toList();
+            List<ReadEvent> highest = coalesce(events, indexes);
+            List<Transaction> transactions = highest.stream().map(ReadConsumer::toTransaction).toList();
+            Set<String> newMessageIds;
+            Set<TransactionKey> writtenKeys;
+            if (bulk) {
+                // the message id goes along, the merge skips the transaction of a message which turns out to be processed
+                Map<String, Transaction> byMessageId = new LinkedHashMap<>();
+                highest.forEach(event -> byMessageId.put(event.getMessageId(), ReadConsumer.toTransaction(event)));
+                BulkMergeResult result = bulkIngestRepository.copyAndMerge(idempotencies, byMessageId);
+                newMessageIds = result.newMessageIds();
+                writtenKeys = result.writtenTransactions();
+            } else {
+                idempotencyRepository.insertAll(idempotencies);
+                // the insert fails on a processed message, every one of them is new
+                newMessageIds = idempotencies.stream().map(Idempotency::getId).collect(Collectors.toSet());
+                writtenKeys = transactionRepository.upsertAll(transactions);
+            }
+            long written = System.nanoTime();
+            consumerMetrics.stage(Stage.WRITE, written - begun);
+            transactionManager.commit(status);
+            consumerMetrics.stage(Stage.COMMIT, System.nanoTime() - written);
+            writeConcurrencyController.recordWrite(System.nanoTime() - start);
+            // the transactions which weren't written neither reached the reader nor changed what the cache holds,
+            // those of a replayed message are already counted as duplicates, the others were stale
+            List<ReadEvent> writtenEvents = highest.stream().filter(event -> writtenKeys.contains(key(event))).toList();
+            LocalDateTime committedAt = LocalDateTime.now();
+            writtenEvents.forEach(event -> consumerMetrics.committed(event, committedAt));
+            consumerMetrics.stale((int) highest.stream()
+                .filter(event -> newMessageIds.contains(event.getMessageId()) && !writtenKeys.contains(key(event)))
+                .count());
+            if (bulk) {
+                consumerMetrics.bulk(indexes.size(), Duration.ofNanos(System.nanoTime() - start));
+                consumerMetrics.duplicate(idempotencies.size() - newMessageIds.size());
+            }
+            indexes.forEach(i -> idempotencyFilter.add(partitions.get(i), events.get(i).getMessageId()));
+            writtenEvents.stream().map(ReadEvent::getCustId).distinct().forEach(customerTransactionCache::invalidate);
+            consumerMetrics.coalesced(indexes.size() - transactions.size());
+            log.info("Successfully persisted batch of {} events as {} transactions", indexes.size(), transactions.size());
+        } catch (Exception ex) {
+            log.warn("Error while trying to persist batch of {} transactions, persisting one by one", indexes.size(), ex);
+            rollback(status);
+            writeConcurrencyController.recordWrite(System.nanoTime() - start);
+            processOneByOne(events, partitions, indexes);
+        }
+    }
+
+    /**
+     * Validate the poll and drop invalid events, events repeated in the same poll and already processed events.
+     * The idempotency filter drops the recently processed events, the ones it isn't sure about are checked in one query,
+     * so a replayed poll doesn't fail the batch insert and roll it back.
+     * The bulk merge skips processed messages by itself, there the ones the filter isn't sure about aren't checked.
+     *
+     * @param events events from one poll
+     * @param partitions partition of each event
+     * @return indexes of the events that should be persisted
+     */
+    private List<Integer> newIndexes(List<ReadEvent> events, List<Integer> partitions) {
+        List<Integer> indexes = new ArrayList<>(events.size());
+        Set<String> messageIds = new HashSet<>();
+        Set<String> unknownIds = new HashSet<>();
+        for (int i = 0; i < events.size(); i++) {
+            ReadEvent event = events.get(i);
+            if (!ReadConsumer.isValid(event, consumerMetrics)) {
+                continue;
+            }
+            if (!messageIds.add(event.getMessageId())) {
+                log.info("Message {} is repeated in the same batch, skipping it", event.getMessageId());
+                continue;
+            }
+            long checkStart = System.nanoTime();
+            IdempotencyFilter.Verdict verdict = idempotencyFilter.check(partitions.get(i), event.getMessageId());
+            consumerMetrics.stage(Stage.IDEMPOTENCY_CHECK, System.nanoTime() - checkStart);
+            if (verdict == IdempotencyFilter.Verdict.DUPLICATE) {
+                consumerMetrics.duplicate();
+                log.info("Message {} was already processed, skipping it", event.getMessageId());
+                continue;
+            }
+            if (verdict == IdempotencyFilter.Verdict.UNKNOWN) {
+                unknownIds.add(event.getMessageId());
+            }
+            indexes.add(i);
+        }
+
+        if (unknownIds.isEmpty() || bulk) {
+            return indexes;
+        }
+        long lookupStart = System.nanoTime();
+        Set<String> processedIds = new HashSet<>(idempotencyRepository.findExistingIds(unknownIds));
+        consumerMetrics.stage(Stage.IDEMPOTENCY_CHECK, System.nanoTime() - lookupStart);
+        if (processedIds.isEmpty()) {
+            return indexes;
+        }
+        return indexes.stream().filter(i -> {
+            if (!processedIds.contains(events.get(i).getMessageId())) {
+                return true;
+            }
+            consumerMetrics.duplicate();
+            log.info("Message {} was already processed, skipping it", events.get(i).getMessageId());
+            return false;
+        }).toList();
+    }
+
+    /**
+     * One poll often has several versions of the same transaction, e.g. PENDING and then SUCCESS for the same id,
+     * only the highest version of each is written, the lower ones would be overwritten in the same DB transaction anyway.
+     * Keeps the order in which the transactions first appeared in the poll.
+     *
+     * @param events events from one poll
+     * @param indexes indexes of the events that should be persisted
+     * @return event with the highest version of each transaction
+     */
+    private static List<ReadEvent> coalesce(List<ReadEvent> events, List<Integer> indexes) {
+        Map<TransactionKey, ReadEvent> highest = new LinkedHashMap<>();
+        for (Integer index : indexes) {
+            ReadEvent event = events.get(index);
+            // on equal versions the first one wins, same as the upsert which only takes a strictly newer version
+            highest.merge(key(event), event, (current, next) -> VERSION_ORDER.compare(next, current) > 0 ? next : current);
+        }
+        return new ArrayList<>(highest.values());
+    }
+
+    private static TransactionKey key(ReadEvent event) {
+        return new TransactionKey(event.getId(), event.getCreatedAt());
+    }
+
+    private void processOneByOne(List<ReadEvent> events, List<Integer> partitions, List<Integer> indexes) {
+        for (Integer index : indexes) {
+            ReadEvent event = events.get(index);
+            long start = System.nanoTime();
+            TransactionStatus status = transactionManager.getTransaction(transactionDefinition("read-transaction"));
+            long begun = System.nanoTime();
+            consumerMetrics.stage(Stage.CONNECTION, begun - start);
+            try {
+                WriteOutcome outcome = transactionRepository.upsertIfNewMessage(ReadConsumer.toIdempotency(event, partitions.get(index)),
+                    ReadConsumer.toTransaction(event));
+                long written = System.nanoTime();
+                consumerMetrics.stage(Stage.WRITE, written - begun);
+                transactionManager.commit(status);
+                consumerMetrics.stage(Stage.COMMIT, System.nanoTime() - written);
+                writeConcurrencyController.recordWrite(System.nanoTime() - start);
+                idempotencyFilter.add(partitions.get(index), event.getMessageId());
+                ReadConsumer.onWritten(event, outcome, consumerMetrics, customerTransactionCache);
+            } catch (Exception ex) {
+                consumerMetrics.failed();
+                rollback(status);
+                writeConcurrencyController.recordWrite(System.nanoTime() - start);
+                // the error handler commits the offsets before this record and sends the record to the DLT after retrying
+                throw new BatchListenerFailedException("Failed to persist transaction " + event.getId(), ex, index);
+            }
+        }
+    }
+
+    /**
+     * A failed commit already completes the transaction, rolling it back again would throw.
+     */
+    private void rollback(TransactionStatus status) {
+        if (!status.isCompleted()) {
+            transactionManager.rollback(status);
+        }
+    }
+
+    private static DefaultTransactionDefinition transactionDefinition(String name) {
+        DefaultTransactionDefinition def = new DefaultTransactionDefinition();
+        def.setName(name);
+        def.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+        return def;
+    }
+}
@@ -0,0 +1,95 @@
+package com.voltpay.reader.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the lag of the reader group on read-topic from the brokers.
+ * Works regardless of which instance owns the partitions, so it can be used by jobs as well.
+ */
+@Slf4j
+@Component
+public class ConsumerLagProbe implements DisposableBean {
+
+    private static final String TOPIC = "read-topic";
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final KafkaAdmin kafkaAdmin;
+
+    private final String groupId;
+
+    private volatile AdminClient adminClient;
+
+    public ConsumerLagProbe(KafkaAdmin kafkaAdmin, @Value("${spring.kafka.consumer.group-id}") String groupId) {
+        this.kafkaAdmin = kafkaAdmin;
+        this.groupId = groupId;
+    }
+
+    /**
+     * @return lag per partition of read-topic, empty if the lag couldn't be read
+     */
+    public Map<TopicPartition, Long> lag() {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = adminClient().listConsumerGroupOffsets(groupId)
+                .partitionsToOffsetAndMetadata().get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .entrySet().stream()
+                .filter(entry -> TOPIC.equals(entry.getKey().topic()) && entry.getValue() != null)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            if (committed.isEmpty()) {
+                return Map.of();
+            }
+
+            Map<TopicPartition, Long> lag = new HashMap<>();
+            adminClient().listOffsets(committed.keySet().stream().collect(Collectors.toMap(Function.identity(), tp -> OffsetSpec.latest())))
+                .all().get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .forEach((tp, end) -> lag.put(tp, Math.max(0, end.offset() - committed.get(tp).offset())));
+            return lag;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Map.of();
+        } catch (Exception ex) {
+            log.warn("Failed to read the lag of {}", groupId, ex);
+            return Map.of();
+        }
+    }
+
+    /**
+     * @return total lag of the reader group on read-topic, -1 if the lag couldn't be read
+     */
+    public long totalLag() {
+        Map<TopicPartition, Long> lag = lag();
+        return lag.isEmpty() ? -1 : lag.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private AdminClient adminClient() {
+        if (adminClient == null) {
+            synchronized (this) {
+                if (adminClient == null) {
+                    adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+                }
+            }
+        }
+        return adminClient;
+    }
+
+    @Override
+    public void destroy() {
+        if (adminClient != null) {
+            adminClient.close();
+        }
+    }
+}
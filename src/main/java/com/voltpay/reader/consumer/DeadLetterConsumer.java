@@ -1,39 +1,68 @@
 package com.voltpay.reader.consumer;
 
+import com.voltpay.reader.metrics.ConsumerMetrics;
 import com.voltpay.reader.pojo.ReadEvent;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 @Service
 @ConditionalOnProperty(name = "kafka.dlt.enabled", havingValue = "true")
-@AllArgsConstructor
 @Slf4j
 public class DeadLetterConsumer {
 
-    @Autowired
-    private KafkaTemplate<String, ReadEvent> kafkaTemplate;
+    private final KafkaTemplate<String, ReadEvent> kafkaTemplate;
+
+    private final ConsumerMetrics consumerMetrics;
+
+    // how long the listener waits for the broker to acknowledge a republished event
+    private final long sendTimeoutMs;
+
+    public DeadLetterConsumer(KafkaTemplate<String, ReadEvent> kafkaTemplate,
+                              ConsumerMetrics consumerMetrics,
+                              @Value("${kafka.dlt.send-timeout-ms:10000}") long sendTimeoutMs) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.consumerMetrics = consumerMetrics;
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
 
     /**
      * Consumer for events in dead letter topic.
      * Republishes the events back to the main read topic.
      * Should be enabled only when we have found only the bug, which caused them to fail.
      * Otherwise the event will just be published right back to the DLT.
+     * Waits for the broker to acknowledge the event, so a failed send is thrown to the error handler, which retries it,
+     * instead of the DLT offset being committed for an event that never reached read-topic.
      *
      * @param event event from dead letter
      */
     @KafkaListener(topics = "read-dlt", containerFactory = "deadLetterListenerContainerFactory")
     public void reprocessMessages(ReadEvent event) {
         try {
-            kafkaTemplate.send("read-topic", event.getCustId().toString(), event);
-            log.info("Successfully republished message {}", event.getMessageId());
-        } catch (Exception ex) {
-            log.error("Failed to produce message {} for reprocessing", event.getMessageId());
-            throw ex;
+            kafkaTemplate.send("read-topic", event.getCustId().toString(), event).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw failed(event, ex);
+        } catch (ExecutionException ex) {
+            throw failed(event, ex.getCause());
+        } catch (TimeoutException | RuntimeException ex) {
+            throw failed(event, ex);
         }
+        consumerMetrics.republished();
+        log.info("Successfully republished message {}", event.getMessageId());
+    }
+
+    private KafkaException failed(ReadEvent event, Throwable cause) {
+        consumerMetrics.republishFailed();
+        log.error("Failed to produce message {} for reprocessing", event.getMessageId(), cause);
+        return new KafkaException("Failed to republish message " + event.getMessageId(), cause);
     }
 }
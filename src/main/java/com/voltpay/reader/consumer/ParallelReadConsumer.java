@@ -0,0 +1,231 @@
+package com.voltpay.reader.consumer;
+
+import com.voltpay.reader.cache.CustomerTransactionCache;
+import com.voltpay.reader.idempotency.IdempotencyFilter;
+import com.voltpay.reader.metrics.ConsumerMetrics;
+import com.voltpay.reader.metrics.Stage;
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.repositories.TransactionRepository;
+import com.voltpay.reader.repositories.WriteOutcome;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+@Service
+@Slf4j
+// Same reasoning as the Read Consumer, never run together with the Dead Letter consumer
+@ConditionalOnExpression("!${kafka.dlt.enabled} and '${kafka.consumer.mode:record}' == 'parallel'")
+public class ParallelReadConsumer {
+
+    // id of the listener container, not its group, the group is still spring.kafka.consumer.group-id
+    static final String LISTENER_ID = "parallel-read-consumer";
+
+    // how long the lanes get to finish the dispatched events on shutdown, whatever isn't acknowledged by then is consumed again
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final TransactionRepository transactionRepository;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final ConsumerMetrics consumerMetrics;
+
+    private final IdempotencyFilter idempotencyFilter;
+
+    private final CustomerTransactionCache customerTransactionCache;
+
+    // publishes to read-dlt, the same recoverer the error handler uses
+    private final ConsumerRecordRecoverer deadLetterRecoverer;
+
+    // a failed event is retried once after this delay before it is published to the DLT, same as the error handler
+    private final long retryDelayMs;
+
+    // attempts to publish an event to the DLT, retryDelayMs apart, before the consumer is stopped
+    private final int deadLetterAttempts;
+
+    // to stop the container when a record can be neither persisted nor published to the DLT
+    private final KafkaListenerEndpointRegistry registry;
+
+    // one virtual thread per lane, each runs its events one at a time in the order they were dispatched
+    private final List<ExecutorService> lanes;
+
+    public ParallelReadConsumer(TransactionRepository transactionRepository,
+                                PlatformTransactionManager transactionManager,
+                                ConsumerMetrics consumerMetrics,
+                                IdempotencyFilter idempotencyFilter,
+                                CustomerTransactionCache customerTransactionCache,
+                                ConsumerRecordRecoverer deadLetterRecoverer,
+                                KafkaListenerEndpointRegistry registry,
+                                @Value("${kafka.consumer.parallel.lanes:32}") int lanes,
+                                @Value("${kafka.consumer.parallel.retry-delay-ms:1000}") long retryDelayMs,
+                                @Value("${kafka.consumer.parallel.dead-letter-attempts:3}") int deadLetterAttempts) {
+        this.transactionRepository = transactionRepository;
+        this.transactionManager = transactionManager;
+        this.consumerMetrics = consumerMetrics;
+        this.idempotencyFilter = idempotencyFilter;
+        this.customerTransactionCache = customerTransactionCache;
+        this.deadLetterRecoverer = deadLetterRecoverer;
+        this.retryDelayMs = retryDelayMs;
+        this.deadLetterAttempts = deadLetterAttempts;
+        this.registry = registry;
+        this.lanes = IntStream.range(0, lanes)
+            .mapToObj(i -> Executors.newSingleThreadExecutor(Thread.ofVirtual().name("read-lane-" + i).factory()))
+            .toList();
+    }
+
+    /**
+     * Validates the event on the consumer thread and hands it to the lane of its customer, then returns to take the next record.
+     * Events of one customer always go to the same lane, so they are persisted in the order of the partition,
+     * while events of different customers of the same partition are persisted concurrently by different lanes.
+     * The container acknowledges out of order and commits the offset of a partition only up to its lowest event not yet persisted,
+     * the consumer is paused until every event of a poll is acknowledged, so at most one poll per consumer thread is in flight.
+     * An event which can be neither persisted nor published to the DLT would never be acknowledged and stall its partition,
+     * instead the whole listener is stopped with an error, its uncommitted records are consumed again once it is restarted.
+     * The writes are bounded by the lanes, not by the consumer threads, so the adaptive write concurrency doesn't apply here.
+     *
+     * @param consumerRecord record of read-topic
+     * @param acknowledgment acknowledged once the event is persisted, skipped or published to the DLT
+     */
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "read-topic", containerFactory = "parallelKafkaListenerContainerFactory")
+    public void processMessage(ConsumerRecord<String, ReadEvent> consumerRecord, Acknowledgment acknowledgment) {
+        ReadEvent event = consumerRecord.value();
+        if (!ReadConsumer.isValid(event, consumerMetrics)) {
+            acknowledgment.acknowledge();
+            return;
+        }
+
+        // recently processed, skip the database entirely
+        if (ReadConsumer.isRecentlyProcessed(event, consumerRecord.partition(), idempotencyFilter, consumerMetrics)) {
+            acknowledgment.acknowledge();
+            return;
+        }
+
+        lanes.get(Math.floorMod(Long.hashCode(event.getCustId()), lanes.size())).execute(() -> {
+            try {
+                persistOrRecover(consumerRecord);
+                acknowledgment.acknowledge();
+            } catch (Exception ex) {
+                onUnrecoverable(consumerRecord, ex);
+            }
+        });
+    }
+
+    /**
+     * Nothing may die silently in a lane, an unacknowledged record keeps the container paused and its partition uncommitted.
+     * Interrupted lanes only happen on shutdown, the container is stopping anyway and the record is consumed again.
+     */
+    private void onUnrecoverable(ConsumerRecord<String, ReadEvent> consumerRecord, Exception ex) {
+        if (ex instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            log.warn("Lane interrupted on shutdown, transaction {} at offset {} of partition {} is consumed again",
+                consumerRecord.value().getId(), consumerRecord.offset(), consumerRecord.partition(), ex);
+            return;
+        }
+        log.error("Transaction {} at offset {} of partition {} was neither persisted nor published to the DLT, stopping the consumer",
+            consumerRecord.value().getId(), consumerRecord.offset(), consumerRecord.partition(), ex);
+        MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+        if (container != null && container.isRunning()) {
+            container.stop();
+        }
+    }
+
+    /**
+     * Persist the event, retry once and publish it to the DLT if that fails as well.
+     * The lane waits for the retry, so later events of the same customer are never persisted before it.
+     */
+    private void persistOrRecover(ConsumerRecord<String, ReadEvent> consumerRecord) throws InterruptedException {
+        try {
+            persist(consumerRecord.value(), consumerRecord.partition());
+            return;
+        } catch (Exception ex) {
+            log.warn("Error while trying to persist transaction {}, retrying in {} ms", consumerRecord.value().getId(), retryDelayMs, ex);
+        }
+
+        Thread.sleep(retryDelayMs);
+        try {
+            persist(consumerRecord.value(), consumerRecord.partition());
+        } catch (Exception ex) {
+            log.error("Failed to persist transaction {}, publishing it to the DLT", consumerRecord.value().getId(), ex);
+            publishToDeadLetter(consumerRecord, ex);
+        }
+    }
+
+    /**
+     * Publish the event to the DLT, retrying while the brokers are unavailable, the lane waits meanwhile.
+     * Throws the last failure once the attempts are used up.
+     */
+    private void publishToDeadLetter(ConsumerRecord<String, ReadEvent> consumerRecord, Exception cause) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                deadLetterRecoverer.accept(consumerRecord, cause);
+                return;
+            } catch (RuntimeException ex) {
+                if (attempt >= deadLetterAttempts) {
+                    throw ex;
+                }
+                log.warn("Failed to publish transaction {} to the DLT, attempt {} of {}", consumerRecord.value().getId(), attempt,
+                    deadLetterAttempts, ex);
+                Thread.sleep(retryDelayMs);
+            }
+        }
+    }
+
+    private void persist(ReadEvent event, int partition) {
+        DefaultTransactionDefinition def = new DefaultTransactionDefinition();
+        def.setName("read-transaction");
+        def.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+        long start = System.nanoTime();
+        TransactionStatus status = transactionManager.getTransaction(def);
+        long begun = System.nanoTime();
+        consumerMetrics.stage(Stage.CONNECTION, begun - start);
+
+        try {
+            WriteOutcome outcome = transactionRepository.upsertIfNewMessage(ReadConsumer.toIdempotency(event, partition),
+                ReadConsumer.toTransaction(event));
+            long written = System.nanoTime();
+            consumerMetrics.stage(Stage.WRITE, written - begun);
+            transactionManager.commit(status);
+            consumerMetrics.stage(Stage.COMMIT, System.nanoTime() - written);
+            idempotencyFilter.add(partition, event.getMessageId());
+            ReadConsumer.onWritten(event, outcome, consumerMetrics, customerTransactionCache);
+        } catch (RuntimeException ex) {
+            consumerMetrics.failed();
+            // a failed commit already completes the transaction, rolling it back again would throw
+            if (!status.isCompleted()) {
+                transactionManager.rollback(status);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Let the lanes finish what was dispatched, the listener containers are stopped before this bean is destroyed.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        lanes.forEach(ExecutorService::shutdown);
+        for (ExecutorService lane : lanes) {
+            if (!lane.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Lane didn't finish in {} seconds, its unacknowledged events are consumed again", SHUTDOWN_TIMEOUT_SECONDS);
+                lane.shutdownNow();
+            }
+        }
+    }
+}
@@ -1,97 +1,147 @@
 package com.voltpay.reader.consumer;
 
+import com.voltpay.reader.cache.CustomerTransactionCache;
+import com.voltpay.reader.entities.Idempotency;
 import com.voltpay.reader.entities.Transaction;
+import com.voltpay.reader.idempotency.IdempotencyFilter;
 import com.voltpay.reader.pojo.ReadEvent;
-import com.voltpay.reader.repositories.IdempotencyRepository;
+import com.voltpay.reader.metrics.ConsumerMetrics;
+import com.voltpay.reader.metrics.Stage;
 import com.voltpay.reader.repositories.TransactionRepository;
-import com.voltpay.reader.utils.Currency;
-import com.voltpay.reader.utils.TrnStatus;
-import com.voltpay.reader.utils.TrnType;
+import com.voltpay.reader.repositories.WriteOutcome;
+import com.voltpay.reader.validation.ReadEventValidator;
+import com.voltpay.reader.validation.Rejection;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 
-import java.util.Arrays;
-import java.util.List;
+import java.time.LocalDateTime;
 
 @Service
 @AllArgsConstructor
 @Slf4j
 // If Dead Letter consumption is enabled the Read Consumer should be disabled otherwise we could end up in an infinite loop of
 // Read Consumer -> publish to DLT -> DLT publish to Read Consumer -> continue until we run out of memory
-@ConditionalOnProperty(name = "kafka.dlt.enabled", havingValue = "false")
+// Only one of the read consumers is active, depending on kafka.consumer.mode
+@ConditionalOnExpression("!${kafka.dlt.enabled} and '${kafka.consumer.mode:record}' == 'record'")
 public class ReadConsumer {
 
-    private static final List<String> CURRENCIES = Arrays.stream(Currency.values()).map(Enum::toString).toList();
+    private TransactionRepository transactionRepository;
 
-    private static final List<Integer> STATUS_VALUES = Arrays.stream(TrnStatus.values()).map(TrnStatus::getValue).toList();
+    private PlatformTransactionManager transactionManager;
 
-    private static final List<String> TYPES = Arrays.stream(TrnType.values()).map(Enum::toString).toList();
+    private ConsumerMetrics consumerMetrics;
 
-    private TransactionRepository transactionRepository;
+    private IdempotencyFilter idempotencyFilter;
 
-    private IdempotencyRepository idempotencyRepository;
+    private CustomerTransactionCache customerTransactionCache;
 
-    private PlatformTransactionManager transactionManager;
+    private WriteConcurrencyController writeConcurrencyController;
 
     @KafkaListener(topics = "read-topic", containerFactory = "kafkaListenerContainerFactory")
-    public void processMessage(ReadEvent event) {
-        if (!isValid(event)) {
-            log.warn("Invalid event, won't process");
+    public void processMessage(ReadEvent event, @Header(KafkaHeaders.RECEIVED_PARTITION) int partition) {
+        if (!isValid(event, consumerMetrics)) {
+            return;
+        }
+
+        // recently processed, skip the database entirely
+        if (isRecentlyProcessed(event, partition, idempotencyFilter, consumerMetrics)) {
             return;
         }
 
         DefaultTransactionDefinition def = new DefaultTransactionDefinition();
         def.setName("read-transaction");
         def.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+        // the latency of the write includes waiting for a connection
+        long start = System.nanoTime();
         TransactionStatus status = transactionManager.getTransaction(def);
+        long begun = System.nanoTime();
+        consumerMetrics.stage(Stage.CONNECTION, begun - start);
 
         try {
-            // throws an exception when trying to persist a duplicate record
-            idempotencyRepository.insertNew(event.getMessageId(), event.getCreatedAt().toLocalDate());
-
-            Transaction transaction = new Transaction(event.getId(), event.getCreatedAt(), event.getUpdatedAt(), event.getAmount(), event.getStatus(),
-                event.getCurrency(), event.getCustId(), event.getType(), event.getComment(), event.getVersion());
-
-            transactionRepository.save(transaction);
+            // idempotency check and version aware upsert in one statement, a duplicate or stale event doesn't throw and writes nothing
+            WriteOutcome outcome = transactionRepository.upsertIfNewMessage(toIdempotency(event, partition), toTransaction(event));
+            long written = System.nanoTime();
+            consumerMetrics.stage(Stage.WRITE, written - begun);
             transactionManager.commit(status);
-            log.info("Successfully persisted transaction {}", event.getId());
+            consumerMetrics.stage(Stage.COMMIT, System.nanoTime() - written);
+            idempotencyFilter.add(partition, event.getMessageId());
+            onWritten(event, outcome, consumerMetrics, customerTransactionCache);
         } catch (Exception ex) {
+            consumerMetrics.failed();
             log.warn("Error while trying to persist transaction {}", event.getId(), ex);
             // Don't send to dead letter here as it will retry and publish the same event twice
             //deadLetterTemplate.send("read-dlt", event.getCustId().toString(), event);
 
             transactionManager.rollback(status);
+        } finally {
+            writeConcurrencyController.recordWrite(System.nanoTime() - start);
         }
     }
 
-    private boolean isValid(ReadEvent event) {
-        // Disregard warmup events
-        if (event == null || event.getMessageId() == null) {
-            return false;
+    /**
+     * Count and log the outcome, customers whose transactions changed are dropped from the cache.
+     */
+    static void onWritten(ReadEvent event, WriteOutcome outcome, ConsumerMetrics consumerMetrics,
+                          CustomerTransactionCache customerTransactionCache) {
+        if (outcome == WriteOutcome.DUPLICATE) {
+            consumerMetrics.duplicate();
+            log.info("Message {} was already processed, skipping it", event.getMessageId());
+        } else if (outcome == WriteOutcome.STALE) {
+            consumerMetrics.stale();
+            log.info("Transaction {} version {} is not newer than the persisted one, skipping", event.getId(), event.getVersion());
+        } else {
+            consumerMetrics.committed(event, LocalDateTime.now());
+            customerTransactionCache.invalidate(event.getCustId());
+            log.info("Successfully persisted transaction {}", event.getId());
         }
+    }
 
-        if (event.getId() == null ||
-            event.getAmount() == null ||
-            event.getCreatedAt() == null ||
-            event.getCurrency() == null ||
-            event.getCustId() == null ||
-            event.getStatus() == null ||
-            event.getType() == null ||
-            !CURRENCIES.contains(event.getCurrency()) ||
-            !STATUS_VALUES.contains(event.getStatus()) ||
-            !TYPES.contains(event.getType())) {
-
+    /**
+     * Check the idempotency filter, an event it knows was processed is counted and logged as a duplicate.
+     */
+    static boolean isRecentlyProcessed(ReadEvent event, int partition, IdempotencyFilter idempotencyFilter, ConsumerMetrics consumerMetrics) {
+        long start = System.nanoTime();
+        IdempotencyFilter.Verdict verdict = idempotencyFilter.check(partition, event.getMessageId());
+        consumerMetrics.stage(Stage.IDEMPOTENCY_CHECK, System.nanoTime() - start);
+        if (verdict != IdempotencyFilter.Verdict.DUPLICATE) {
             return false;
         }
+        consumerMetrics.duplicate();
+        log.info("Message {} was already processed, skipping it", event.getMessageId());
+        return true;
+    }
 
+    static Idempotency toIdempotency(ReadEvent event, int partition) {
+        return new Idempotency(event.getMessageId(), event.getCreatedAt().toLocalDate(), partition);
+    }
 
-        return true;
+    static Transaction toTransaction(ReadEvent event) {
+        return new Transaction(event.getId(), event.getCreatedAt(), event.getUpdatedAt(), event.getAmount(), event.getStatus(),
+            event.getCurrency(), event.getCustId(), event.getType(), event.getComment(), event.getVersion());
+    }
+
+    /**
+     * Validate the event, an invalid event is counted and logged with the reason it is rejected for.
+     */
+    static boolean isValid(ReadEvent event, ConsumerMetrics consumerMetrics) {
+        long start = System.nanoTime();
+        Rejection rejection = ReadEventValidator.validate(event);
+        consumerMetrics.stage(Stage.VALIDATE, System.nanoTime() - start);
+        if (rejection == null) {
+            consumerMetrics.valid();
+            return true;
+        }
+        consumerMetrics.invalid(rejection);
+        log.warn("Invalid event {}, {}, won't process", event == null ? null : event.getMessageId(), rejection);
+        return false;
     }
 }
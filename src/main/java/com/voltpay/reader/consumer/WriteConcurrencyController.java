@@ -0,0 +1,193 @@
+package com.voltpay.reader.consumer;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts how many consumer threads of read-topic write to the DB at once, the others are paused and keep their partitions.
+ * The limit follows AIMD: it is cut by kafka.consumer.adaptive.decrease-factor when the p99 of the writes of the last interval
+ * is above the SLO or threads are waiting for a connection of the consumers' pool, otherwise it grows by one up to
+ * spring.kafka.consumer.threads. An interval without writes leaves it as it is.
+ * When the limit is below the consumer threads the paused ones rotate every interval, so no partition is starved.
+ * Disabled by default, then recording a write is a no-op and every consumer thread runs.
+ * Never active in parallel mode, there the lanes write, pausing consumer threads wouldn't bound them.
+ */
+@Slf4j
+@Component
+public class WriteConcurrencyController {
+
+    private static final String TOPIC = "read-topic";
+
+    private static final String PARALLEL = "parallel";
+
+    // samples kept per interval, enough for a p99, the rest of a very busy interval is dropped
+    private static final int MAX_SAMPLES = 8192;
+
+    private final KafkaListenerEndpointRegistry registry;
+
+    private final HikariDataSource dataSource;
+
+    private final boolean enabled;
+
+    private final long writeLatencySloNanos;
+
+    private final int minConsumers;
+
+    private final int maxConsumers;
+
+    private final int maxPendingConnections;
+
+    private final double decreaseFactor;
+
+    // write latencies of the current interval, in nanos
+    private final long[] samples = new long[MAX_SAMPLES];
+
+    private int sampleCount;
+
+    private volatile int limit;
+
+    // the running consumer threads are the limit threads starting at this one, moved by one every interval
+    private int offset;
+
+    public WriteConcurrencyController(KafkaListenerEndpointRegistry registry,
+                                      HikariDataSource dataSource,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${kafka.consumer.adaptive.enabled:false}") boolean enabled,
+                                      @Value("${kafka.consumer.adaptive.write-latency-slo-ms:250}") long writeLatencySloMs,
+                                      @Value("${kafka.consumer.adaptive.min-consumers:1}") int minConsumers,
+                                      @Value("${spring.kafka.consumer.threads}") int maxConsumers,
+                                      @Value("${kafka.consumer.adaptive.max-pending-connections:0}") int maxPendingConnections,
+                                      @Value("${kafka.consumer.adaptive.decrease-factor:0.5}") double decreaseFactor,
+                                      @Value("${kafka.consumer.mode:record}") String mode) {
+        this.registry = registry;
+        this.dataSource = dataSource;
+        this.enabled = enabled && !PARALLEL.equals(mode);
+        if (enabled && !this.enabled) {
+            log.warn("Adaptive write concurrency doesn't apply to parallel mode, ignoring kafka.consumer.adaptive.enabled");
+        }
+        this.writeLatencySloNanos = TimeUnit.MILLISECONDS.toNanos(writeLatencySloMs);
+        this.minConsumers = Math.min(minConsumers, maxConsumers);
+        this.maxConsumers = maxConsumers;
+        this.maxPendingConnections = maxPendingConnections;
+        this.decreaseFactor = decreaseFactor;
+        this.limit = maxConsumers;
+        Gauge.builder("reader.consumers.limit", this, WriteConcurrencyController::limit)
+            .description("Consumer threads of read-topic allowed to run by the adaptive controller")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Record the latency of one write, from asking for a connection until the DB transaction is committed or rolled back.
+     *
+     * @param nanos latency of the write
+     */
+    public void recordWrite(long nanos) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (samples) {
+            if (sampleCount < MAX_SAMPLES) {
+                samples[sampleCount++] = nanos;
+            }
+        }
+    }
+
+    /**
+     * Adjust the limit to the writes of the last interval and pause or resume the consumer threads to match it.
+     */
+    @Scheduled(fixedDelayString = "${kafka.consumer.adaptive.interval-ms:1000}")
+    public void adjust() {
+        if (!enabled) {
+            return;
+        }
+        long[] window;
+        synchronized (samples) {
+            window = Arrays.copyOf(samples, sampleCount);
+            sampleCount = 0;
+        }
+
+        int pending = pendingConnections();
+        if (window.length > 0 || pending > maxPendingConnections) {
+            long p99 = p99(window);
+            int next = pending > maxPendingConnections || p99 > writeLatencySloNanos
+                ? Math.max(minConsumers, (int) (limit * decreaseFactor))
+                : Math.min(maxConsumers, limit + 1);
+            if (next != limit) {
+                log.info("Consumer limit {} -> {}, p99 write latency {} ms over {} writes, {} threads waiting for a connection", limit, next,
+                    TimeUnit.NANOSECONDS.toMillis(p99), window.length, pending);
+                limit = next;
+            }
+        }
+        apply();
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * Limit consumer threads run, the rest are paused, the window of running ones moves by one thread each interval,
+     * so at most one consumer is paused and one resumed per interval besides the changes of the limit.
+     * A paused consumer keeps polling without returning records, so it doesn't leave the group and its partitions stay assigned.
+     */
+    private void apply() {
+        List<MessageListenerContainer> consumers = consumers();
+        for (int i = 0; i < consumers.size(); i++) {
+            MessageListenerContainer consumer = consumers.get(i);
+            boolean running = Math.floorMod(i - offset, consumers.size()) < limit;
+            if (running && consumer.isPauseRequested()) {
+                consumer.resume();
+            } else if (!running && !consumer.isPauseRequested()) {
+                consumer.pause();
+            }
+        }
+        offset = limit < consumers.size() ? (offset + 1) % consumers.size() : 0;
+    }
+
+    /**
+     * @return one container per consumer thread of read-topic
+     */
+    private List<MessageListenerContainer> consumers() {
+        List<MessageListenerContainer> consumers = new ArrayList<>();
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            String[] topics = container.getContainerProperties().getTopics();
+            if (topics == null || !Arrays.asList(topics).contains(TOPIC)) {
+                continue;
+            }
+            if (container instanceof ConcurrentMessageListenerContainer<?, ?> concurrent) {
+                consumers.addAll(concurrent.getContainers());
+            } else {
+                consumers.add(container);
+            }
+        }
+        return consumers;
+    }
+
+    private int pendingConnections() {
+        // null until the pool is started
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+    }
+
+    private static long p99(long[] window) {
+        if (window.length == 0) {
+            return 0;
+        }
+        Arrays.sort(window);
+        return window[(int) Math.ceil(window.length * 0.99) - 1];
+    }
+}
@@ -0,0 +1,132 @@
+package com.voltpay.reader.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DataSource of the GraphQL reads, every new connection comes from the next replica, round robin.
+ * With graphql.datasource.max-replica-lag-ms set, replicas further behind than that, or which can't be reached,
+ * are skipped until they catch up, when none is left the reads go to the primary.
+ * Without replicas every read goes to the primary, through its own pool, separate from the consumers' one.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    public static final String PRIMARY = "primary";
+
+    // 0 on the primary and on a replica which replayed everything it received, otherwise how old the last replayed transaction is
+    private static final String LAG_SQL = """
+        SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                    ELSE COALESCE((EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000)::bigint, 0) END""";
+
+    private final DataSource primary;
+
+    private final Map<String, DataSource> replicas;
+
+    private final long maxLagMs;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    // replicas reads are routed to, replaced as a whole by the lag check
+    private volatile List<String> upToDate;
+
+    /**
+     * @param primary reader pool of the primary
+     * @param replicas pool of each replica by name
+     * @param maxLagMs replicas lagging more are skipped, 0 to always use them
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxLagMs) {
+        this.primary = primary;
+        this.replicas = new LinkedHashMap<>(replicas);
+        this.maxLagMs = maxLagMs;
+        this.upToDate = List.copyOf(this.replicas.keySet());
+
+        Map<Object, Object> targets = new HashMap<>(this.replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        List<String> candidates = upToDate;
+        if (candidates.isEmpty()) {
+            return PRIMARY;
+        }
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * Replicas reads are currently routed to.
+     *
+     * @return replica names, empty when the reads go to the primary
+     */
+    public List<String> getUpToDateReplicas() {
+        return upToDate;
+    }
+
+    /**
+     * Check how far behind each replica is, runs every graphql.datasource.lag-check-interval-ms.
+     */
+    @Scheduled(fixedDelayString = "${graphql.datasource.lag-check-interval-ms:5000}")
+    public void checkReplicaLag() {
+        if (replicas.isEmpty() || maxLagMs <= 0) {
+            return;
+        }
+
+        List<String> checked = new ArrayList<>();
+        replicas.forEach((name, replica) -> {
+            long lagMs = lagMs(name, replica);
+            if (lagMs >= 0 && lagMs <= maxLagMs) {
+                checked.add(name);
+            } else if (upToDate.contains(name)) {
+                log.warn("Replica {} is {}ms behind, reading from the other replicas or the primary until it catches up", name, lagMs);
+            }
+        });
+        if (checked.isEmpty() && !upToDate.isEmpty()) {
+            log.warn("No replica is up to date, reading from the primary");
+        }
+        upToDate = List.copyOf(checked);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource replica : replicas.values()) {
+            close(replica);
+        }
+        close(primary);
+    }
+
+    /**
+     * @return lag in ms, -1 if it can't be read
+     */
+    private static long lagMs(String name, DataSource replica) {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(LAG_SQL)) {
+            return rs.next() ? rs.getLong(1) : -1;
+        } catch (Exception ex) {
+            log.warn("Failed to read the lag of replica {}", name, ex);
+            return -1;
+        }
+    }
+
+    private static void close(DataSource dataSource) throws Exception {
+        if (dataSource instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
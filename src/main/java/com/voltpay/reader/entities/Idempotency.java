@@ -20,4 +20,7 @@ public class Idempotency {
     private String id;
 
     private LocalDate date;
+
+    // read-topic partition of the message, used to warm up the in-memory idempotency filter per partition
+    private Integer kafkaPartition;
 }
@@ -0,0 +1,109 @@
+package com.voltpay.reader.idempotency;
+
+import com.voltpay.reader.repositories.IdempotencyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory pre-filter in front of read.idempotency, one per assigned read-topic partition.
+ * It only saves round-trips and rollbacks when offsets are rewound and messages replayed,
+ * a message it doesn't know about is always checked against the database.
+ */
+@Slf4j
+@Component
+public class IdempotencyFilter {
+
+    public enum Verdict {
+        // the message id was processed recently, no need to go to the database
+        DUPLICATE,
+        // the message id was never processed
+        NEW,
+        // the filter can't tell, the database decides
+        UNKNOWN
+    }
+
+    private final Map<Integer, PartitionIdempotencyFilter> filters = new ConcurrentHashMap<>();
+
+    private final IdempotencyRepository idempotencyRepository;
+
+    private final boolean enabled;
+
+    private final int lruSize;
+
+    private final int expectedInsertions;
+
+    private final double falsePositiveRate;
+
+    private final int warmUpDays;
+
+    private final int warmUpLimit;
+
+    public IdempotencyFilter(IdempotencyRepository idempotencyRepository,
+                             @Value("${idempotency.filter.enabled:true}") boolean enabled,
+                             @Value("${idempotency.filter.lru-size:10000}") int lruSize,
+                             @Value("${idempotency.filter.expected-insertions:500000}") int expectedInsertions,
+                             @Value("${idempotency.filter.false-positive-rate:0.01}") double falsePositiveRate,
+                             @Value("${idempotency.filter.warm-up-days:7}") int warmUpDays,
+                             @Value("${idempotency.filter.warm-up-limit:500000}") int warmUpLimit) {
+        this.idempotencyRepository = idempotencyRepository;
+        this.enabled = enabled;
+        this.lruSize = lruSize;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.warmUpDays = warmUpDays;
+        this.warmUpLimit = warmUpLimit;
+    }
+
+    public Verdict check(int partition, String messageId) {
+        PartitionIdempotencyFilter filter = filters.get(partition);
+        return filter == null ? Verdict.UNKNOWN : filter.check(messageId);
+    }
+
+    /**
+     * Remember a message id, call only once it is committed in read.idempotency.
+     */
+    public void add(int partition, String messageId) {
+        PartitionIdempotencyFilter filter = filters.get(partition);
+        if (filter != null) {
+            filter.add(messageId);
+        }
+    }
+
+    /**
+     * Rebuild the filter of a newly assigned partition from the ids persisted for it.
+     * Loads at most warm-up-limit of the most recent ids, if there are more the filter can still detect recent duplicates,
+     * but can't prove that a message is new.
+     *
+     * @param partition assigned partition
+     */
+    public void warmUp(int partition) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<String> ids = idempotencyRepository.findRecentIds(partition, LocalDate.now().minusDays(warmUpDays), warmUpLimit + 1);
+            boolean complete = ids.size() <= warmUpLimit;
+            PartitionIdempotencyFilter filter = new PartitionIdempotencyFilter(lruSize, expectedInsertions, falsePositiveRate, complete);
+            // most recent ids come first, add them last so they stay in the LRU
+            for (int i = Math.min(ids.size(), warmUpLimit) - 1; i >= 0; i--) {
+                filter.add(ids.get(i));
+            }
+            filters.put(partition, filter);
+            log.info("Warmed up idempotency filter for partition {} with {} ids, complete {}", partition, ids.size(), complete);
+        } catch (Exception ex) {
+            // without a filter every message goes to the database
+            filters.remove(partition);
+            log.warn("Failed to warm up idempotency filter for partition {}", partition, ex);
+        }
+    }
+
+    public void evict(int partition) {
+        filters.remove(partition);
+    }
+}
@@ -0,0 +1,45 @@
+package com.voltpay.reader.idempotency;
+
+import lombok.AllArgsConstructor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Builds the idempotency filters of the read-topic partitions assigned to the consumer and drops the ones taken away.
+ * Runs on the consumer thread, so a filter is ready before the first record of its partition is processed.
+ */
+@Component
+@AllArgsConstructor
+public class IdempotencyFilterRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    private static final String TOPIC = "read-topic";
+
+    private final IdempotencyFilter idempotencyFilter;
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.stream()
+            .filter(partition -> TOPIC.equals(partition.topic()))
+            .forEach(partition -> idempotencyFilter.warmUp(partition.partition()));
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        evict(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        evict(partitions);
+    }
+
+    private void evict(Collection<TopicPartition> partitions) {
+        partitions.stream()
+            .filter(partition -> TOPIC.equals(partition.topic()))
+            .forEach(partition -> idempotencyFilter.evict(partition.partition()));
+    }
+}
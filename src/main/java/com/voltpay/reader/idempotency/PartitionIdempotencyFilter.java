@@ -0,0 +1,46 @@
+package com.voltpay.reader.idempotency;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Idempotency filter for the message ids of one partition.
+ * The LRU holds the most recently processed ids and is exact, the Bloom filter covers all ids loaded or processed since the
+ * partition was assigned and can only tell that an id is definitely new.
+ * Ids are only added after they are committed to read.idempotency, which stays the source of truth.
+ */
+class PartitionIdempotencyFilter {
+
+    private final Map<String, Boolean> recentIds;
+
+    private final BloomFilter bloomFilter;
+
+    // false if warming up didn't load every id of the partition, then the Bloom filter can't prove an id is new
+    private final boolean complete;
+
+    PartitionIdempotencyFilter(int lruSize, int expectedInsertions, double falsePositiveRate, boolean complete) {
+        this.recentIds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > lruSize;
+            }
+        };
+        this.bloomFilter = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.complete = complete;
+    }
+
+    synchronized IdempotencyFilter.Verdict check(String messageId) {
+        if (recentIds.get(messageId) != null) {
+            return IdempotencyFilter.Verdict.DUPLICATE;
+        }
+        if (complete && !bloomFilter.mightContain(messageId)) {
+            return IdempotencyFilter.Verdict.NEW;
+        }
+        return IdempotencyFilter.Verdict.UNKNOWN;
+    }
+
+    synchronized void add(String messageId) {
+        recentIds.put(messageId, Boolean.TRUE);
+        bloomFilter.put(messageId);
+    }
+}
@@ -1,31 +1,212 @@
 package com.voltpay.reader.jobs;
 
+import com.voltpay.reader.consumer.ConsumerLagProbe;
+import com.voltpay.reader.metrics.CleanUpMetrics;
+import com.voltpay.reader.pojo.IdempotencyPartition;
 import com.voltpay.reader.repositories.IdempotencyRepository;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
 
 @Slf4j
 @Service
-@AllArgsConstructor
 public class IdempotencyCleanUpJob {
 
-    private IdempotencyRepository idempotencyRepository;
+    private static final String CHUNKED = "chunked";
+
+    private final IdempotencyRepository idempotencyRepository;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final ConsumerLagProbe consumerLagProbe;
+
+    private final CleanUpMetrics cleanUpMetrics;
+
+    private final String mode;
+
+    private final int chunkSize;
+
+    private final long pauseMs;
+
+    private final long maxPauseMs;
+
+    private final long maxLag;
+
+    private final long maxChunkLatencyMs;
+
+    private final Duration maxDuration;
+
+    public IdempotencyCleanUpJob(IdempotencyRepository idempotencyRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 ConsumerLagProbe consumerLagProbe,
+                                 CleanUpMetrics cleanUpMetrics,
+                                 @Value("${idempotency.cleanup.mode:partition}") String mode,
+                                 @Value("${idempotency.cleanup.chunk-size:5000}") int chunkSize,
+                                 @Value("${idempotency.cleanup.pause-ms:100}") long pauseMs,
+                                 @Value("${idempotency.cleanup.max-pause-ms:5000}") long maxPauseMs,
+                                 @Value("${idempotency.cleanup.max-lag:50000}") long maxLag,
+                                 @Value("${idempotency.cleanup.max-chunk-latency-ms:500}") long maxChunkLatencyMs,
+                                 @Value("${idempotency.cleanup.max-duration-minutes:60}") long maxDurationMinutes) {
+        this.idempotencyRepository = idempotencyRepository;
+        this.transactionManager = transactionManager;
+        this.consumerLagProbe = consumerLagProbe;
+        this.cleanUpMetrics = cleanUpMetrics;
+        this.mode = mode;
+        this.chunkSize = chunkSize;
+        this.pauseMs = pauseMs;
+        this.maxPauseMs = maxPauseMs;
+        this.maxLag = maxLag;
+        this.maxChunkLatencyMs = maxChunkLatencyMs;
+        this.maxDuration = Duration.ofMinutes(maxDurationMinutes);
+    }
 
     /**
-     * Job to clean up old records for idempotency.
-     * Runs once a week.
-     * @return the amount of records we deleted
+     * Job to clean up old records for idempotency, runs once a day.
+     * Depending on idempotency.cleanup.mode it either drops whole daily partitions or,
+     * where read.idempotency can't be partitioned, deletes the old records in small chunks.
      */
-    @Scheduled(cron = "0 0 0 * * 0")
-    @Transactional
-    public int cleanUp() {
-        int deletedRecords = idempotencyRepository.deleteOldRecords(LocalDate.now().minusWeeks(1));
-        log.info("Successfully cleaned up {}", deletedRecords);
-        return deletedRecords;
+    @Scheduled(cron = "0 0 0 * * *")
+    public void cleanUp() {
+        long start = System.nanoTime();
+        long removed = CHUNKED.equals(mode)
+            ? deleteInChunks()
+            : dropPartitions().stream().mapToLong(IdempotencyPartition::estimatedRows).sum() + deleteDefaultPartitionInChunks();
+        cleanUpMetrics.run(removed, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * read.idempotency is partitioned by day, every partition whose records are older than one week is detached and dropped,
+     * which takes the same time regardless of how many records are in it, unlike a DELETE.
+     * Also creates the upcoming partitions, a failure is counted, records of days without a partition go to the default one.
+     * @return the partitions we dropped
+     */
+    public List<IdempotencyPartition> dropPartitions() {
+        try {
+            idempotencyRepository.runPartitionMaintenance();
+        } catch (Exception ex) {
+            cleanUpMetrics.maintenanceFailed();
+            log.error("Failed to create upcoming idempotency partitions, new records go to the default partition", ex);
+        }
+
+        // records on the cut off date are removed as well, so partitions ending on the next day can be dropped
+        LocalDate cutOff = LocalDate.now().minusWeeks(1);
+        List<IdempotencyPartition> dropped = new ArrayList<>();
+        for (IdempotencyPartition partition : idempotencyRepository.findPartitionsEndingBy(cutOff.plusDays(1))) {
+            // each partition in its own short transaction, DETACH holds a lock on read.idempotency
+            TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+            try {
+                idempotencyRepository.dropPartition(partition);
+                transactionManager.commit(status);
+                dropped.add(partition);
+                log.info("Dropped idempotency partition {} with ~{} records", partition.name(), partition.estimatedRows());
+            } catch (Exception ex) {
+                if (!status.isCompleted()) {
+                    transactionManager.rollback(status);
+                }
+                log.warn("Failed to drop idempotency partition {}", partition.name(), ex);
+            }
+        }
+
+        log.info("Successfully cleaned up {} partitions with ~{} records", dropped.size(),
+            dropped.stream().mapToLong(IdempotencyPartition::estimatedRows).sum());
+        return dropped;
+    }
+
+    /**
+     * Deletes records older than one week in chunks, each chunk committed on its own,
+     * so autovacuum can keep up and the consumers are never blocked for long.
+     * The pause between chunks doubles while the reader group lags or a chunk is slow and shrinks back once they recover.
+     * Stops after idempotency.cleanup.max-duration-minutes, the rest is deleted by the next run.
+     * @return the records we deleted
+     */
+    public long deleteInChunks() {
+        LocalDate cutOff = LocalDate.now().minusWeeks(1);
+        return deleteInChunks("idempotency", () -> idempotencyRepository.deleteChunk(cutOff, chunkSize));
+    }
+
+    /**
+     * The default partition is never dropped, its records older than one week are deleted in chunks, same as in chunked mode.
+     * Usually empty, it only fills up while pg_partman maintenance fails.
+     * @return the records we deleted
+     */
+    public long deleteDefaultPartitionInChunks() {
+        LocalDate cutOff = LocalDate.now().minusWeeks(1);
+        return deleteInChunks("default partition", () -> idempotencyRepository.deleteDefaultPartitionChunk(cutOff, chunkSize));
+    }
+
+    private long deleteInChunks(String target, IntSupplier deleteChunk) {
+        long start = System.nanoTime();
+        long deleted = 0;
+        long pause = pauseMs;
+        while (true) {
+            if (System.nanoTime() - start > maxDuration.toNanos() || Thread.currentThread().isInterrupted()) {
+                log.warn("Clean up of {} didn't finish, will continue on the next run", target);
+                break;
+            }
+
+            // -1 when the lag can't be read, don't hold the clean up because of it
+            long lag = consumerLagProbe.totalLag();
+            if (lag > maxLag) {
+                pause = backOff(pause);
+                log.info("Consumer lag {} is above {}, pausing idempotency clean up for {}ms", lag, maxLag, pause);
+                sleep(pause);
+                continue;
+            }
+
+            long chunkStart = System.nanoTime();
+            int chunk;
+            TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+            try {
+                chunk = deleteChunk.getAsInt();
+                transactionManager.commit(status);
+            } catch (Exception ex) {
+                if (!status.isCompleted()) {
+                    transactionManager.rollback(status);
+                }
+                log.warn("Failed to delete {} chunk, stopping the clean up", target, ex);
+                break;
+            }
+            Duration latency = Duration.ofNanos(System.nanoTime() - chunkStart);
+            long latencyMs = latency.toMillis();
+            deleted += chunk;
+            cleanUpMetrics.chunk(chunk, latency);
+
+            if (chunk < chunkSize) {
+                break;
+            }
+            if (latencyMs > maxChunkLatencyMs) {
+                pause = backOff(pause);
+                log.info("Idempotency chunk took {}ms, pausing for {}ms", latencyMs, pause);
+            } else {
+                pause = Math.max(pauseMs, pause / 2);
+            }
+            sleep(pause);
+        }
+
+        log.info("Successfully cleaned up {} {} records in {}ms", deleted, target, Duration.ofNanos(System.nanoTime() - start).toMillis());
+        return deleted;
+    }
+
+    private long backOff(long pause) {
+        cleanUpMetrics.backOff();
+        return Math.min(maxPauseMs, Math.max(1, pause) * 2);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
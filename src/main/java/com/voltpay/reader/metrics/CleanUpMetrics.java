@@ -0,0 +1,70 @@
+package com.voltpay.reader.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters for the idempotency clean up job.
+ */
+@Component
+public class CleanUpMetrics {
+
+    private final Counter records;
+
+    private final Counter backOffs;
+
+    private final Counter maintenanceFailures;
+
+    private final Timer duration;
+
+    private final Timer chunkDuration;
+
+    // rows per second of the last run, as a long so the gauge doesn't need boxing
+    private final AtomicLong rowsPerSecond = new AtomicLong();
+
+    public CleanUpMetrics(MeterRegistry registry) {
+        this.records = Counter.builder("reader.idempotency.cleanup.records")
+            .description("Idempotency records removed by the clean up job")
+            .register(registry);
+        this.backOffs = Counter.builder("reader.idempotency.cleanup.backoffs")
+            .description("Times the chunked clean up backed off because of consumer lag or DB latency")
+            .register(registry);
+        this.maintenanceFailures = Counter.builder("reader.idempotency.cleanup.maintenance.failures")
+            .description("Failed pg_partman maintenance runs, until one succeeds new records fall into the default partition")
+            .register(registry);
+        this.duration = Timer.builder("reader.idempotency.cleanup.duration")
+            .description("Total duration of a clean up run")
+            .register(registry);
+        this.chunkDuration = Timer.builder("reader.idempotency.cleanup.chunk.duration")
+            .description("Duration of deleting and committing one chunk in chunked mode")
+            .publishPercentileHistogram()
+            .register(registry);
+        Gauge.builder("reader.idempotency.cleanup.rows.per.second", rowsPerSecond, AtomicLong::get)
+            .description("Records removed per second by the last clean up run")
+            .register(registry);
+    }
+
+    public void chunk(long removed, Duration took) {
+        records.increment(removed);
+        chunkDuration.record(took);
+    }
+
+    public void backOff() {
+        backOffs.increment();
+    }
+
+    public void maintenanceFailed() {
+        maintenanceFailures.increment();
+    }
+
+    public void run(long removed, Duration took) {
+        duration.record(took);
+        rowsPerSecond.set(took.toMillis() == 0 ? removed : removed * 1000 / took.toMillis());
+    }
+}
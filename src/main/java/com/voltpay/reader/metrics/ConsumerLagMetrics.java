@@ -0,0 +1,52 @@
+package com.voltpay.reader.metrics;
+
+import com.voltpay.reader.consumer.ConsumerLagProbe;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lag of the reader group per partition of read-topic.
+ * Read from the brokers on a schedule rather than on every scrape, the gauges show the last value read.
+ * The lag is of the whole group, every instance reports the same values regardless of which partitions it owns.
+ */
+@Component
+public class ConsumerLagMetrics {
+
+    private final ConsumerLagProbe consumerLagProbe;
+
+    private final MeterRegistry registry;
+
+    // registered the first time a partition is seen, partitions aren't removed from the topic
+    private final Map<Integer, AtomicLong> lag = new ConcurrentHashMap<>();
+
+    public ConsumerLagMetrics(ConsumerLagProbe consumerLagProbe, MeterRegistry registry) {
+        this.consumerLagProbe = consumerLagProbe;
+        this.registry = registry;
+    }
+
+    /**
+     * Read the lag of every partition, a failed read keeps the previous values.
+     */
+    @Scheduled(fixedDelayString = "${kafka.consumer.lag-metrics-interval-ms:15000}")
+    public void refresh() {
+        for (Map.Entry<TopicPartition, Long> entry : consumerLagProbe.lag().entrySet()) {
+            lag.computeIfAbsent(entry.getKey().partition(), this::register).set(entry.getValue());
+        }
+    }
+
+    private AtomicLong register(int partition) {
+        AtomicLong value = new AtomicLong();
+        Gauge.builder("reader.consumer.lag", value, AtomicLong::get)
+            .description("Records of read-topic not yet committed by the reader group, per partition")
+            .tag("partition", String.valueOf(partition))
+            .register(registry);
+        return value;
+    }
+}
@@ -0,0 +1,178 @@
+package com.voltpay.reader.metrics;
+
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.validation.Rejection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters for the read-topic consumers.
+ * Meters are registered once, so recording on the hot path doesn't allocate.
+ * Timers publish percentile histograms, so p99 can be aggregated across instances from the Prometheus scrape.
+ */
+@Component
+public class ConsumerMetrics {
+
+    private final Counter valid;
+
+    private final Counter duplicates;
+
+    private final Counter failed;
+
+    private final Counter deadLettered;
+
+    private final Counter republished;
+
+    private final Counter republishFailures;
+
+    private final Counter stale;
+
+    private final Counter coalesced;
+
+    private final Map<Rejection, Counter> invalid = new EnumMap<>(Rejection.class);
+
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+
+    private final Timer endToEnd;
+
+    private final Counter bulkEvents;
+
+    private final Timer bulkDuration;
+
+    // events per second of the last bulk merge, as a long so the gauge doesn't need boxing
+    private final AtomicLong bulkEventsPerSecond = new AtomicLong();
+
+    public ConsumerMetrics(MeterRegistry registry) {
+        this.valid = Counter.builder("reader.events.valid")
+            .description("Events which passed validation")
+            .register(registry);
+        this.failed = Counter.builder("reader.events.failed")
+            .description("Writes of events which failed and were rolled back, a retried event is counted for each attempt")
+            .register(registry);
+        this.deadLettered = Counter.builder("reader.events.dlt")
+            .description("Records published to read-dlt, including the ones which couldn't be deserialized")
+            .register(registry);
+        this.republished = Counter.builder("reader.dlt.republished")
+            .description("Events of read-dlt published back to read-topic by the Dead Letter consumer")
+            .register(registry);
+        this.republishFailures = Counter.builder("reader.dlt.republish.failures")
+            .description("Events of read-dlt the Dead Letter consumer failed to publish back to read-topic")
+            .register(registry);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, Timer.builder("reader.stage.duration")
+                .description("Duration of one stage of consuming an event, in batch mode the write and commit stages are per poll")
+                .tag("stage", stage.tag())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry));
+        }
+        this.endToEnd = Timer.builder("reader.events.end.to.end")
+            .description("From the time of the event, updatedAt or createdAt without it, until it is committed")
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofMinutes(10))
+            .register(registry);
+        this.duplicates = Counter.builder("reader.events.duplicate")
+            .description("Events skipped because their message id was already processed")
+            .register(registry);
+        this.stale = Counter.builder("reader.events.stale")
+            .description("Events not applied because the persisted transaction has the same or a newer version")
+            .register(registry);
+        this.coalesced = Counter.builder("reader.events.coalesced")
+            .description("Events not written because a higher version of the same transaction was in the same batch")
+            .register(registry);
+        for (Rejection rejection : Rejection.values()) {
+            invalid.put(rejection, Counter.builder("reader.events.invalid")
+                .description("Events not processed because they failed validation, per reason")
+                .tag("reason", rejection.tag())
+                .register(registry));
+        }
+        this.bulkEvents = Counter.builder("reader.bulk.events")
+            .description("Events copied and merged in bulk mode")
+            .register(registry);
+        this.bulkDuration = Timer.builder("reader.bulk.duration")
+            .description("Duration of the copy and merge of one poll in bulk mode, including the commit")
+            .register(registry);
+        Gauge.builder("reader.bulk.events.per.second", bulkEventsPerSecond, AtomicLong::get)
+            .description("Events per second of the last bulk merge")
+            .register(registry);
+    }
+
+    public void valid() {
+        valid.increment();
+    }
+
+    public void failed() {
+        failed.increment();
+    }
+
+    public void deadLettered() {
+        deadLettered.increment();
+    }
+
+    public void republished() {
+        republished.increment();
+    }
+
+    public void republishFailed() {
+        republishFailures.increment();
+    }
+
+    public void stage(Stage stage, long nanos) {
+        stages.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the end-to-end latency of a committed event.
+     * The event times are local date times, they are expected in the zone of this service, a time in the future isn't recorded.
+     */
+    public void committed(ReadEvent event, LocalDateTime committedAt) {
+        LocalDateTime eventTime = Objects.requireNonNullElse(event.getUpdatedAt(), event.getCreatedAt());
+        Duration latency = Duration.between(eventTime, committedAt);
+        if (!latency.isNegative()) {
+            endToEnd.record(latency);
+        }
+    }
+
+    public void duplicate() {
+        duplicates.increment();
+    }
+
+    public void duplicate(int events) {
+        duplicates.increment(events);
+    }
+
+    public void invalid(Rejection rejection) {
+        invalid.get(rejection).increment();
+    }
+
+    public void stale() {
+        stale.increment();
+    }
+
+    public void stale(int events) {
+        stale.increment(events);
+    }
+
+    public void coalesced(int events) {
+        coalesced.increment(events);
+    }
+
+    public void bulk(int events, Duration took) {
+        bulkEvents.increment(events);
+        bulkDuration.record(took);
+        bulkEventsPerSecond.set(took.toMillis() == 0 ? events : events * 1000L / took.toMillis());
+    }
+}
@@ -0,0 +1,29 @@
+package com.voltpay.reader.metrics;
+
+import java.util.Locale;
+
+/**
+ * Stage of consuming an event from read-topic, timed by reader.stage.duration.
+ */
+public enum Stage {
+
+    // from the bytes of the record to a ReadEvent
+    DESERIALIZE,
+    VALIDATE,
+    // idempotency filter, in batch mode also the lookup of the ids the filter isn't sure about
+    IDEMPOTENCY_CHECK,
+    // waiting for a connection of the consumers' pool and beginning the DB transaction
+    CONNECTION,
+    // insert of the idempotency record and upsert of the transaction, one statement in record and parallel mode
+    WRITE,
+    COMMIT;
+
+    private final String tag = name().toLowerCase(Locale.ROOT);
+
+    /**
+     * @return value of the stage tag of the metrics
+     */
+    public String tag() {
+        return tag;
+    }
+}
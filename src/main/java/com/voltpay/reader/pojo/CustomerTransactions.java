@@ -0,0 +1,6 @@
+package com.voltpay.reader.pojo;
+
+import java.util.List;
+
+public record CustomerTransactions(Long custId, List<TransactionView> transactions) {
+}
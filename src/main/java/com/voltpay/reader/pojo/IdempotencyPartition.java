@@ -0,0 +1,13 @@
+package com.voltpay.reader.pojo;
+
+import java.time.LocalDate;
+
+/**
+ * Daily partition of read.idempotency.
+ *
+ * @param name name of the partition table in the read schema
+ * @param upperBound exclusive upper bound of the partition's dates
+ * @param estimatedRows row count estimated from the table statistics, counting would scan the partition
+ */
+public record IdempotencyPartition(String name, LocalDate upperBound, long estimatedRows) {
+}
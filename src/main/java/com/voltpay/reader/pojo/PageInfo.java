@@ -0,0 +1,4 @@
+package com.voltpay.reader.pojo;
+
+public record PageInfo(boolean hasNextPage, String endCursor) {
+}
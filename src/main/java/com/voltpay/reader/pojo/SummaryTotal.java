@@ -0,0 +1,6 @@
+package com.voltpay.reader.pojo;
+
+import java.math.BigDecimal;
+
+public record SummaryTotal(String currency, Integer status, long count, BigDecimal amount) {
+}
@@ -0,0 +1,26 @@
+package com.voltpay.reader.pojo;
+
+import java.util.List;
+
+/**
+ * Relay style page of transactions.
+ *
+ * @param edges transactions in the page with their cursors
+ * @param pageInfo whether there is a next page and the cursor to request it with
+ */
+public record TransactionConnection(List<TransactionEdge> edges, PageInfo pageInfo) {
+
+    /**
+     * @param transactions up to limit + 1 transactions, the extra one only tells us there is a next page
+     * @param limit size of the page
+     */
+    public static TransactionConnection of(List<TransactionView> transactions, int limit) {
+        boolean hasNextPage = transactions.size() > limit;
+        List<TransactionEdge> edges = transactions.stream()
+            .limit(limit)
+            .map(trn -> new TransactionEdge(new TransactionCursor(trn.createdAt(), trn.id()).encode(), trn))
+            .toList();
+        String endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).cursor();
+        return new TransactionConnection(edges, new PageInfo(hasNextPage, endCursor));
+    }
+}
@@ -0,0 +1,45 @@
+package com.voltpay.reader.pojo;
+
+import com.voltpay.reader.resolvers.InvalidArgumentException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of a transaction in a page ordered by (created_at, id), handed to the clients as an opaque string.
+ *
+ * @param createdAt created at of the transaction
+ * @param id id of the transaction
+ */
+public record TransactionCursor(LocalDateTime createdAt, String id) {
+
+    private static final char SEPARATOR = '|';
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((createdAt.toString() + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor cursor from a previous page, may be null
+     * @return the decoded cursor, null if none was given
+     * @throws InvalidArgumentException if the cursor wasn't produced by {@link #encode()}
+     */
+    public static TransactionCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new InvalidArgumentException("Invalid cursor " + cursor);
+            }
+            return new TransactionCursor(LocalDateTime.parse(value.substring(0, separator)), value.substring(separator + 1));
+        } catch (IllegalArgumentException | DateTimeParseException ex) {
+            // not Base64 or not a date, the cursor was tampered with
+            throw new InvalidArgumentException("Invalid cursor " + cursor, ex);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.voltpay.reader.pojo;
+
+import com.voltpay.reader.resolvers.InvalidArgumentException;
+
+import java.time.LocalDateTime;
+
+/**
+ * Optional filters of the transaction queries, a null field isn't filtered on.
+ * from/to are applied to created_at directly, so Postgres only reads the monthly partitions in the range.
+ *
+ * @param from inclusive lower bound of created_at
+ * @param to exclusive upper bound of created_at
+ * @param status status of the transactions
+ * @param type type of the transactions
+ * @param currency currency of the transactions
+ */
+public record TransactionFilter(LocalDateTime from, LocalDateTime to, Integer status, String type, String currency) {
+
+    public static final TransactionFilter NONE = new TransactionFilter(null, null, null, null, null);
+
+    public TransactionFilter {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new InvalidArgumentException("from must be before to");
+        }
+    }
+}
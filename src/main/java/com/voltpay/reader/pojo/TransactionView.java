@@ -0,0 +1,11 @@
+package com.voltpay.reader.pojo;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Transaction as returned by the GraphQL queries, only the selected columns are read so the others are null.
+ */
+public record TransactionView(String id, LocalDateTime createdAt, LocalDateTime updatedAt, BigDecimal amount, Integer status,
+                              String currency, Long custId, String type, String comment, Integer version) {
+}
@@ -0,0 +1,159 @@
+package com.voltpay.reader.repositories;
+
+import com.voltpay.reader.entities.Idempotency;
+import com.voltpay.reader.entities.Transaction;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write side for replays and backfills, used when kafka.consumer.mode is bulk.
+ * The rows are streamed with COPY into staging tables and merged into read.idempotency and read.transaction with one statement.
+ * Has to be called in a DB transaction, the staging rows are dropped on commit or rollback.
+ */
+@Repository
+public class BulkIngestRepository {
+
+    // temporary tables live as long as the pooled connection, so they are created once per connection and only emptied on commit
+    // on the other batches IF NOT EXISTS costs one catalog lookup per table in the same round trip, little next to the COPY of a bulk batch
+    // transaction_staging also has the message id of each transaction, so that only the transactions of new messages are merged
+    private static final String CREATE_STAGING = """
+        CREATE TEMP TABLE IF NOT EXISTS idempotency_staging (LIKE read.idempotency) ON COMMIT DELETE ROWS;
+        CREATE TEMP TABLE IF NOT EXISTS transaction_staging (LIKE read.transaction, message_id VARCHAR(255)) ON COMMIT DELETE ROWS
+        """;
+
+    private static final String COPY_IDEMPOTENCY = "COPY idempotency_staging (id, date, kafka_partition) FROM STDIN (FORMAT csv)";
+
+    private static final String COPY_TRANSACTION = """
+        COPY transaction_staging (message_id, id, created_at, updated_at, amount, status, currency, cust_id, type, comment, version)
+        FROM STDIN (FORMAT csv)
+        """;
+
+    // an already processed message id is skipped and so is its transaction, only the transactions of the new ones are merged
+    // with the same rules as the upsert of the other modes, a replayed event has the same version and leaves the transaction as it is
+    // the staged transactions are already coalesced, a row can be affected only once per statement
+    // the new message ids come with a null transaction id, the written transactions with a null message id
+    private static final String MERGE = """
+        WITH new_message AS (
+            INSERT INTO read.idempotency (id, date, kafka_partition)
+            SELECT id, date, kafka_partition FROM idempotency_staging
+            ON CONFLICT DO NOTHING
+            RETURNING id
+        ), written AS (
+            INSERT INTO read.transaction AS trn (id, created_at, updated_at, amount, status, currency, cust_id, type, comment, version)
+            SELECT stg.id, stg.created_at, stg.updated_at, stg.amount, stg.status, stg.currency, stg.cust_id, stg.type, stg.comment,
+                stg.version
+            FROM transaction_staging stg JOIN new_message msg ON msg.id = stg.message_id
+            ON CONFLICT (id, created_at) DO UPDATE
+            SET updated_at = EXCLUDED.updated_at, amount = EXCLUDED.amount, status = EXCLUDED.status, currency = EXCLUDED.currency,
+                cust_id = EXCLUDED.cust_id, type = EXCLUDED.type, comment = EXCLUDED.comment, version = EXCLUDED.version
+            WHERE EXCLUDED.version > trn.version
+            RETURNING trn.id, trn.created_at
+        )
+        SELECT id AS message_id, NULL AS id, NULL::timestamp AS created_at FROM new_message
+        UNION ALL
+        SELECT NULL, id, created_at FROM written
+        """;
+
+    // bytes buffered before they are sent to the server as one CopyData message
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BulkIngestRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Copy the records into the staging tables and merge them into the read tables.
+     *
+     * @param idempotencies idempotency records, the ids are expected to be distinct
+     * @param transactions transactions by the id of the message they came with, at most one version of each
+     * @return new message ids and keys of the transactions written by the merge
+     */
+    public BulkMergeResult copyAndMerge(List<Idempotency> idempotencies, Map<String, Transaction> transactions) {
+        jdbcTemplate.execute(CREATE_STAGING);
+        // the connection of the surrounding DB transaction, the staging rows have to be visible to the merge
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            copy(pgConnection, COPY_IDEMPOTENCY, writer -> {
+                for (Idempotency idempotency : idempotencies) {
+                    writeRow(writer, idempotency.getId(), idempotency.getDate(), idempotency.getKafkaPartition());
+                }
+            });
+            copy(pgConnection, COPY_TRANSACTION, writer -> {
+                for (Map.Entry<String, Transaction> entry : transactions.entrySet()) {
+                    Transaction trn = entry.getValue();
+                    writeRow(writer, entry.getKey(), trn.getId(), trn.getCreatedAt(), trn.getUpdatedAt(), trn.getAmount(), trn.getStatus(),
+                        trn.getCurrency(), trn.getCustId(), trn.getType(), trn.getComment(), trn.getVersion());
+                }
+            });
+            return null;
+        });
+        Set<String> newMessageIds = new HashSet<>();
+        Set<TransactionKey> writtenTransactions = new HashSet<>();
+        jdbcTemplate.query(MERGE, rs -> {
+            String messageId = rs.getString("message_id");
+            if (messageId != null) {
+                newMessageIds.add(messageId);
+            } else {
+                writtenTransactions.add(new TransactionKey(rs.getString("id"), rs.getTimestamp("created_at").toLocalDateTime()));
+            }
+        });
+        return new BulkMergeResult(newMessageIds, writtenTransactions);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    /**
+     * Stream the rows to the server while they are written, the whole batch is never held as one CSV string.
+     */
+    private static void copy(PGConnection connection, String sql, RowWriter rows) throws SQLException {
+        // closing the stream ends the COPY, a failure of the server surfaces there
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new PGCopyOutputStream(connection, sql, COPY_BUFFER_SIZE),
+            StandardCharsets.UTF_8))) {
+            rows.write(writer);
+        } catch (IOException ex) {
+            // translated by the JdbcTemplate like any other SQL error
+            throw new SQLException("COPY failed: " + sql, ex);
+        }
+    }
+
+    /**
+     * One CSV row, an unquoted empty field is NULL and every value is quoted so that an empty string stays an empty string.
+     * LocalDate, LocalDateTime and BigDecimal print in formats PostgreSQL parses.
+     */
+    private static void writeRow(Writer writer, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            String text = value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+            writer.write('"');
+            writer.write(text.replace("\"", "\"\""));
+            writer.write('"');
+        }
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,12 @@
+package com.voltpay.reader.repositories;
+
+import java.util.Set;
+
+/**
+ * What a bulk merge changed.
+ *
+ * @param newMessageIds message ids which weren't processed before, the rest were skipped as duplicates
+ * @param writtenTransactions keys of the transactions which were inserted or updated, the rest were already as new or newer
+ */
+public record BulkMergeResult(Set<String> newMessageIds, Set<TransactionKey> writtenTransactions) {
+}
@@ -0,0 +1,51 @@
+package com.voltpay.reader.repositories;
+
+import com.voltpay.reader.admission.ReadAdmission;
+import com.voltpay.reader.pojo.SummaryTotal;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Read side of read.customer_summary, which the triggers on read.transaction keep up to date.
+ */
+@Repository
+public class CustomerSummaryRepository {
+
+    // a primary key range scan, the same few rows no matter how many transactions the customer has
+    // totals whose transactions were all updated to another status or deleted are left at 0 and skipped
+    private static final String FIND_BY_CUST_ID_AND_MONTH = """
+        SELECT currency, status, tx_count, total_amount
+        FROM read.customer_summary
+        WHERE cust_id = ? AND month = ? AND tx_count > 0
+        ORDER BY currency, status
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ReadAdmission readAdmission;
+
+    public CustomerSummaryRepository(@Qualifier("readerDataSource") DataSource readerDataSource, ReadAdmission readAdmission) {
+        this.jdbcTemplate = new JdbcTemplate(readerDataSource);
+        this.readAdmission = readAdmission;
+    }
+
+    /**
+     * Find the totals of the customer's transactions created in the month.
+     *
+     * @param custId customer id
+     * @param month month the transactions were created in
+     * @return totals per currency and status, empty if the customer had no transactions in the month
+     */
+    public List<SummaryTotal> findByCustIdAndMonth(Long custId, YearMonth month) {
+        return readAdmission.call(() -> jdbcTemplate.query(FIND_BY_CUST_ID_AND_MONTH,
+            (rs, rowNum) -> new SummaryTotal(rs.getString("currency"), rs.getInt("status"), rs.getLong("tx_count"),
+                rs.getBigDecimal("total_amount")),
+            custId, Date.valueOf(month.atDay(1))));
+    }
+}
@@ -2,28 +2,24 @@ package com.voltpay.reader.repositories;
 
 import com.voltpay.reader.entities.Idempotency;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 
 @Repository
-public interface IdempotencyRepository extends JpaRepository<Idempotency, String> {
+public interface IdempotencyRepository extends JpaRepository<Idempotency, String>, IdempotencyRepositoryCustom {
 
-    @Modifying
     @Query(
-        value = "INSERT INTO read.idempotency (id, date) VALUES (:id, :date)",
+        value = "SELECT id FROM read.idempotency WHERE kafka_partition = :partition AND date >= :date ORDER BY date DESC LIMIT :limit",
         nativeQuery = true
     )
-    void insertNew(@Param("id") String id, @Param("date") LocalDate date);
+    List<String> findRecentIds(@Param("partition") int partition, @Param("date") LocalDate date, @Param("limit") int limit);
 
-    @Modifying
-    @Query(
-        value = "DELETE FROM read.idempotency where date <= :date",
-        nativeQuery = true
-    )
-    int deleteOldRecords(LocalDate date);
+    @Query("SELECT i.id FROM Idempotency i WHERE i.id IN :ids")
+    List<String> findExistingIds(@Param("ids") Collection<String> ids);
 
 }
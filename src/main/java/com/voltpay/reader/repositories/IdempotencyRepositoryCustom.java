@@ -0,0 +1,58 @@
+package com.voltpay.reader.repositories;
+
+import com.voltpay.reader.entities.Idempotency;
+import com.voltpay.reader.pojo.IdempotencyPartition;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface IdempotencyRepositoryCustom {
+
+    /**
+     * Insert all idempotency records using one JDBC batch.
+     * Throws an exception if any of the records is a duplicate, the caller is expected to roll back.
+     *
+     * @param records records to insert
+     */
+    void insertAll(List<Idempotency> records);
+
+    /**
+     * Find the partitions of read.idempotency whose dates are all before the given date, the default partition is never returned.
+     *
+     * @param date exclusive upper bound of the partitions
+     * @return partitions ordered by date
+     */
+    List<IdempotencyPartition> findPartitionsEndingBy(LocalDate date);
+
+    /**
+     * Detach the partition from read.idempotency and drop it, takes constant time regardless of the rows in it.
+     *
+     * @param partition partition to drop
+     */
+    void dropPartition(IdempotencyPartition partition);
+
+    /**
+     * Delete at most limit records dated on or before the given date.
+     * Meant to be called repeatedly, each call in its own short transaction, so no long lock or huge WAL burst is produced.
+     *
+     * @param date inclusive upper bound of the dates to delete
+     * @param limit max records to delete
+     * @return deleted records, less than limit once nothing is left to delete
+     */
+    int deleteChunk(LocalDate date, int limit);
+
+    /**
+     * Same as {@link #deleteChunk} but only in the default partition of read.idempotency,
+     * where records end up when their daily partition didn't exist yet, e.g. while pg_partman maintenance was failing.
+     *
+     * @param date inclusive upper bound of the dates to delete
+     * @param limit max records to delete
+     * @return deleted records, less than limit once nothing is left to delete
+     */
+    int deleteDefaultPartitionChunk(LocalDate date, int limit);
+
+    /**
+     * Let pg_partman create the upcoming daily partitions.
+     */
+    void runPartitionMaintenance();
+}
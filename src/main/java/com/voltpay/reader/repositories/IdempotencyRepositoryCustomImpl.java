@@ -0,0 +1,86 @@
+package com.voltpay.reader.repositories;
+
+import com.voltpay.reader.entities.Idempotency;
+import com.voltpay.reader.pojo.IdempotencyPartition;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.List;
+
+@AllArgsConstructor
+public class IdempotencyRepositoryCustomImpl implements IdempotencyRepositoryCustom {
+
+    private static final String INSERT = "INSERT INTO read.idempotency (id, date, kafka_partition) VALUES (?, ?, ?)";
+
+    // partman doesn't expose the bounds of a partition directly, they are parsed from the partition definition
+    private static final String FIND_PARTITIONS_ENDING_BY = """
+        SELECT partition_name, upper_bound, estimated_rows
+        FROM (
+            SELECT c.relname AS partition_name,
+                (regexp_match(pg_get_expr(c.relpartbound, c.oid), 'TO \\(''([^'']+)''\\)'))[1]::date AS upper_bound,
+                greatest(c.reltuples, 0)::bigint AS estimated_rows
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'read.idempotency'::regclass
+              AND pg_get_expr(c.relpartbound, c.oid) <> 'DEFAULT'
+        ) partitions
+        WHERE upper_bound <= ?
+        ORDER BY upper_bound
+        """;
+
+    // chunked mode is meant for an unpartitioned read.idempotency, deleting by primary key keeps it correct on the partitioned one too,
+    // where ctid isn't unique across partitions; the chunk is found through idx_idempotency_date rather than a sequential scan
+    private static final String DELETE_CHUNK = """
+        DELETE FROM read.idempotency
+        WHERE (id, date) IN (SELECT id, date FROM read.idempotency WHERE date <= ? LIMIT ?)
+        """;
+
+    // rows dated after the last partition pg_partman created land in the default partition and are never dropped with a partition,
+    // within one table ctid is unique, so the chunk is found and deleted by physical location without a second index lookup
+    private static final String DELETE_DEFAULT_PARTITION_CHUNK = """
+        DELETE FROM read.idempotency_default
+        WHERE ctid = ANY(ARRAY(SELECT ctid FROM read.idempotency_default WHERE date <= ? LIMIT ?))
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertAll(List<Idempotency> records) {
+        jdbcTemplate.batchUpdate(INSERT, records, records.size(), (ps, idempotency) -> {
+            ps.setString(1, idempotency.getId());
+            ps.setDate(2, Date.valueOf(idempotency.getDate()));
+            ps.setObject(3, idempotency.getKafkaPartition(), Types.INTEGER);
+        });
+    }
+
+    @Override
+    public List<IdempotencyPartition> findPartitionsEndingBy(LocalDate date) {
+        return jdbcTemplate.query(FIND_PARTITIONS_ENDING_BY, (rs, rowNum) -> new IdempotencyPartition(rs.getString("partition_name"),
+            rs.getDate("upper_bound").toLocalDate(), rs.getLong("estimated_rows")), Date.valueOf(date));
+    }
+
+    @Override
+    public void dropPartition(IdempotencyPartition partition) {
+        String table = "read.\"" + partition.name().replace("\"", "\"\"") + "\"";
+        jdbcTemplate.execute("ALTER TABLE read.idempotency DETACH PARTITION " + table);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+    }
+
+    @Override
+    public int deleteChunk(LocalDate date, int limit) {
+        return jdbcTemplate.update(DELETE_CHUNK, Date.valueOf(date), limit);
+    }
+
+    @Override
+    public int deleteDefaultPartitionChunk(LocalDate date, int limit) {
+        return jdbcTemplate.update(DELETE_DEFAULT_PARTITION_CHUNK, Date.valueOf(date), limit);
+    }
+
+    @Override
+    public void runPartitionMaintenance() {
+        jdbcTemplate.execute("SELECT partman.run_maintenance('read.idempotency')");
+    }
+}
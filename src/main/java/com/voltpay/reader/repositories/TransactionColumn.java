@@ -0,0 +1,49 @@
+package com.voltpay.reader.repositories;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Columns of read.transaction that can be selected by the GraphQL queries, with the field each is exposed as.
+ */
+public enum TransactionColumn {
+
+    ID("id", "id"),
+    CREATED_AT("createdAt", "created_at"),
+    UPDATED_AT("updatedAt", "updated_at"),
+    AMOUNT("amount", "amount"),
+    STATUS("status", "status"),
+    CURRENCY("currency", "currency"),
+    CUST_ID("custId", "cust_id"),
+    TYPE("type", "type"),
+    COMMENT("comment", "comment"),
+    VERSION("version", "version");
+
+    private final String field;
+
+    private final String column;
+
+    TransactionColumn(String field, String column) {
+        this.field = field;
+        this.column = column;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * @param fields names of the selected GraphQL fields of a transaction
+     * @return the columns for the fields, id and created_at are always included as the cursor is made of them
+     */
+    public static Set<TransactionColumn> forFields(Collection<String> fields) {
+        Set<TransactionColumn> columns = EnumSet.of(ID, CREATED_AT);
+        for (TransactionColumn column : values()) {
+            if (fields.contains(column.field)) {
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,9 @@
+package com.voltpay.reader.repositories;
+
+import java.time.LocalDateTime;
+
+/**
+ * Primary key of read.transaction.
+ */
+public record TransactionKey(String id, LocalDateTime createdAt) {
+}
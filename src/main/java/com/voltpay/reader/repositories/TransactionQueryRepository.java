@@ -0,0 +1,211 @@
+package com.voltpay.reader.repositories;
+
+import com.voltpay.reader.admission.ReadAdmission;
+import com.voltpay.reader.pojo.TransactionCursor;
+import com.voltpay.reader.pojo.TransactionFilter;
+import com.voltpay.reader.pojo.TransactionView;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Read side of read.transaction for the GraphQL API.
+ * Plain JDBC, only the columns the client selected are read and mapped to views, no entities or persistence context are involved.
+ * Reads go through the reader pool, and only once {@link ReadAdmission} lets them in.
+ */
+@Repository
+public class TransactionQueryRepository {
+
+    private static final String FROM = " FROM read.transaction WHERE ";
+
+    // newest first, the row comparison continues right after the cursor, unlike an OFFSET nothing before it is read again
+    private static final String ORDER_BY_NEWEST = " ORDER BY created_at DESC, id DESC LIMIT ?";
+
+    // oldest first for exports, rows created while paging through an open window end up on the last pages
+    private static final String ORDER_BY_OLDEST = " ORDER BY created_at, id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final ReadAdmission readAdmission;
+
+    private final int fetchSize;
+
+    public TransactionQueryRepository(@Qualifier("readerDataSource") DataSource readerDataSource,
+                                      ReadAdmission readAdmission,
+                                      @Value("${graphql.transactions.export.fetch-size:500}") int fetchSize) {
+        // not beans, another JdbcTemplate or transaction manager bean would turn off the auto-configured ones of the consumers
+        this.jdbcTemplate = new JdbcTemplate(readerDataSource);
+        this.readOnlyTransaction = new TransactionTemplate(new DataSourceTransactionManager(readerDataSource));
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readAdmission = readAdmission;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Find a page of the customer's transactions, newest first.
+     * Uses idx_transaction_cust_id_created_at, with from/to only the partitions in the range are scanned.
+     *
+     * @param custId customer id
+     * @param columns columns to read
+     * @param filter optional filters
+     * @param after cursor of the last transaction of the previous page, null for the first page
+     * @param limit max transactions to return
+     * @return up to limit transactions
+     */
+    public List<TransactionView> findByCustId(Long custId, Set<TransactionColumn> columns, TransactionFilter filter, TransactionCursor after,
+                                              int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        conditions.add("cust_id = ?");
+        params.add(custId);
+        addFilter(conditions, params, filter);
+        if (after != null) {
+            conditions.add("(created_at, id) < (?, ?)");
+            params.add(Timestamp.valueOf(after.createdAt()));
+            params.add(after.id());
+        }
+        params.add(limit);
+        String sql = select(columns) + String.join(" AND ", conditions) + ORDER_BY_NEWEST;
+        return readAdmission.call(() -> jdbcTemplate.query(sql, mapper(columns), params.toArray()));
+    }
+
+    /**
+     * Find the newest transactions of several customers with one query.
+     * The customers are joined laterally, so each of them is an index scan that stops after limit rows,
+     * unlike cust_id = ANY(?) which would read every transaction of every customer before limiting.
+     *
+     * @param custIds customer ids
+     * @param columns columns to read
+     * @param filter optional filters
+     * @param limit max transactions per customer
+     * @return up to limit transactions per customer, customers without transactions are left out
+     */
+    public Map<Long, List<TransactionView>> findByCustIds(Collection<Long> custIds, Set<TransactionColumn> columns, TransactionFilter filter,
+                                                          int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        params.add(bigintArray(custIds));
+        conditions.add("cust_id = customer.cust_id");
+        addFilter(conditions, params, filter);
+        params.add(limit);
+        String sql = "SELECT customer.cust_id AS customer_id, t.* FROM unnest(?::bigint[]) AS customer(cust_id) CROSS JOIN LATERAL ("
+            + select(columns) + String.join(" AND ", conditions) + ORDER_BY_NEWEST + ") t";
+
+        RowMapper<TransactionView> mapper = mapper(columns);
+        return readAdmission.call(() -> {
+            Map<Long, List<TransactionView>> transactions = new HashMap<>();
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> transactions.computeIfAbsent(rs.getLong("customer_id"), id -> new ArrayList<>())
+                .add(mapper.mapRow(rs, rs.getRow())), params.toArray());
+            return transactions;
+        });
+    }
+
+    /**
+     * Find a page of all transactions in the filter's created_at range, oldest first.
+     * Meant for exports with big pages, the rows are fetched from a server side cursor fetch-size at a time
+     * instead of all at once, which Postgres only does inside a transaction.
+     *
+     * @param columns columns to read
+     * @param filter filters, from and to are expected to be set so only their partitions are read
+     * @param after cursor of the last transaction of the previous page, null for the first page
+     * @param limit max transactions to return
+     * @return up to limit transactions
+     */
+    public List<TransactionView> findAll(Set<TransactionColumn> columns, TransactionFilter filter, TransactionCursor after, int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        addFilter(conditions, params, filter);
+        if (after != null) {
+            conditions.add("(created_at, id) > (?, ?)");
+            params.add(Timestamp.valueOf(after.createdAt()));
+            params.add(after.id());
+        }
+        params.add(limit);
+        String sql = select(columns) + String.join(" AND ", conditions) + ORDER_BY_OLDEST;
+        PreparedStatementSetter setter = new ArgumentPreparedStatementSetter(params.toArray());
+        return readAdmission.call(() -> readOnlyTransaction.execute(status -> jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(fetchSize);
+            setter.setValues(ps);
+            return ps;
+        }, mapper(columns))));
+    }
+
+    private static String select(Set<TransactionColumn> columns) {
+        return columns.stream().map(TransactionColumn::getColumn).collect(Collectors.joining(", ", "SELECT ", FROM));
+    }
+
+    private static SqlTypeValue bigintArray(Collection<Long> values) {
+        return new AbstractSqlTypeValue() {
+            @Override
+            protected Object createTypeValue(Connection con, int sqlType, String typeName) throws SQLException {
+                return con.createArrayOf("bigint", values.toArray());
+            }
+        };
+    }
+
+    /**
+     * Columns which weren't read are left null.
+     */
+    private static RowMapper<TransactionView> mapper(Set<TransactionColumn> columns) {
+        return (rs, rowNum) -> new TransactionView(
+            columns.contains(TransactionColumn.ID) ? rs.getString("id") : null,
+            columns.contains(TransactionColumn.CREATED_AT) ? rs.getTimestamp("created_at").toLocalDateTime() : null,
+            columns.contains(TransactionColumn.UPDATED_AT) ? rs.getTimestamp("updated_at").toLocalDateTime() : null,
+            columns.contains(TransactionColumn.AMOUNT) ? rs.getBigDecimal("amount") : null,
+            columns.contains(TransactionColumn.STATUS) ? rs.getObject("status", Integer.class) : null,
+            columns.contains(TransactionColumn.CURRENCY) ? rs.getString("currency") : null,
+            columns.contains(TransactionColumn.CUST_ID) ? rs.getObject("cust_id", Long.class) : null,
+            columns.contains(TransactionColumn.TYPE) ? rs.getString("type") : null,
+            columns.contains(TransactionColumn.COMMENT) ? rs.getString("comment") : null,
+            columns.contains(TransactionColumn.VERSION) ? rs.getObject("version", Integer.class) : null);
+    }
+
+    private static void addFilter(List<String> conditions, List<Object> params, TransactionFilter filter) {
+        // created_at is compared as is, wrapping it in a function or cast would disable partition pruning
+        if (filter.from() != null) {
+            conditions.add("created_at >= ?");
+            params.add(Timestamp.valueOf(filter.from()));
+        }
+        if (filter.to() != null) {
+            conditions.add("created_at < ?");
+            params.add(Timestamp.valueOf(filter.to()));
+        }
+        if (filter.status() != null) {
+            conditions.add("status = ?");
+            params.add(filter.status());
+        }
+        if (filter.type() != null) {
+            conditions.add("type = ?");
+            params.add(filter.type());
+        }
+        if (filter.currency() != null) {
+            conditions.add("currency = ?");
+            params.add(filter.currency());
+        }
+    }
+}
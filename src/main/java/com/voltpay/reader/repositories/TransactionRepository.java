@@ -4,11 +4,7 @@ import com.voltpay.reader.entities.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
-
 @Repository
-public interface TransactionRepository extends JpaRepository<Transaction, String> {
-
+public interface TransactionRepository extends JpaRepository<Transaction, String>, TransactionRepositoryCustom {
 
-    List<Transaction> findByCustId(Long custId);
 }
@@ -0,0 +1,32 @@
+package com.voltpay.reader.repositories;
+
+import com.voltpay.reader.entities.Idempotency;
+import com.voltpay.reader.entities.Transaction;
+
+import java.util.List;
+import java.util.Set;
+
+public interface TransactionRepositoryCustom {
+
+    /**
+     * Insert all transactions with one statement, bypassing the persistence context.
+     * An existing transaction is overwritten only by a newer version, same as {@link #upsertIfNewMessage}.
+     *
+     * @param transactions transactions to insert or newer versions of them, at most one per id and created at
+     * @return keys of the transactions which were written, the missing ones were stale
+     */
+    Set<TransactionKey> upsertAll(List<Transaction> transactions);
+
+    /**
+     * Record the message id in read.idempotency and insert or update the transaction in one round-trip.
+     * The write doesn't look the transaction up first, unlike save() which merges and issues a SELECT.
+     * Duplicates are detected with ON CONFLICT DO NOTHING instead of a constraint violation,
+     * so they don't throw and don't roll back the surrounding transaction.
+     * An existing transaction is overwritten only by a newer version, so out of order or replayed events never revert it.
+     *
+     * @param idempotency idempotency record of the message
+     * @param transaction transaction to insert or newer version of it
+     * @return outcome of the write
+     */
+    WriteOutcome upsertIfNewMessage(Idempotency idempotency, Transaction transaction);
+}
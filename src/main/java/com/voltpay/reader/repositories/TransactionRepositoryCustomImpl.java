@@ -0,0 +1,116 @@
+package com.voltpay.reader.repositories;
+
+import com.voltpay.reader.entities.Idempotency;
+import com.voltpay.reader.entities.Transaction;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+@AllArgsConstructor
+public class TransactionRepositoryCustomImpl implements TransactionRepositoryCustom {
+
+    // one statement for the whole batch, one array per column, unlike a JDBC batch it tells written rows from skipped ones
+    // a row can be affected only once per statement, so the ids are expected to be distinct
+    private static final String UPSERT_ALL = """
+        INSERT INTO read.transaction AS trn (id, created_at, updated_at, amount, status, currency, cust_id, type, comment, version)
+        SELECT * FROM unnest(?::varchar[], ?::timestamp[], ?::timestamp[], ?::numeric[], ?::integer[], ?::varchar[], ?::bigint[],
+            ?::varchar[], ?::varchar[], ?::integer[])
+        ON CONFLICT (id, created_at) DO UPDATE
+        SET updated_at = EXCLUDED.updated_at, amount = EXCLUDED.amount, status = EXCLUDED.status, currency = EXCLUDED.currency,
+            cust_id = EXCLUDED.cust_id, type = EXCLUDED.type, comment = EXCLUDED.comment, version = EXCLUDED.version
+        WHERE EXCLUDED.version > trn.version
+        RETURNING id, created_at
+        """;
+
+    // the transaction is written only if the idempotency insert returned a row, i.e. the message is new
+    // an existing transaction is updated only by a newer version, the WHERE keeps a stale event from overwriting it
+    // parameters are cast as their type can't be inferred from the target columns in INSERT ... SELECT
+    private static final String UPSERT_IF_NEW_MESSAGE = """
+        WITH idempotency AS (
+            INSERT INTO read.idempotency (id, date, kafka_partition) VALUES (?, ?, ?)
+            ON CONFLICT DO NOTHING
+            RETURNING id
+        ), upserted AS (
+            INSERT INTO read.transaction AS trn (id, created_at, updated_at, amount, status, currency, cust_id, type, comment, version)
+            SELECT ?::varchar, ?::timestamp, ?::timestamp, ?::numeric, ?::integer, ?::varchar, ?::bigint, ?::varchar, ?::varchar, ?::integer
+            FROM idempotency
+            ON CONFLICT (id, created_at) DO UPDATE
+            SET updated_at = EXCLUDED.updated_at, amount = EXCLUDED.amount, status = EXCLUDED.status, currency = EXCLUDED.currency,
+                cust_id = EXCLUDED.cust_id, type = EXCLUDED.type, comment = EXCLUDED.comment, version = EXCLUDED.version
+            WHERE EXCLUDED.version > trn.version
+            RETURNING id
+        )
+        SELECT (SELECT count(*) FROM idempotency) AS new_message, (SELECT count(*) FROM upserted) AS written
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Set<TransactionKey> upsertAll(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return Set.of();
+        }
+        List<TransactionKey> written = jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(UPSERT_ALL);
+            ps.setArray(1, connection.createArrayOf("varchar", column(transactions, Transaction::getId)));
+            ps.setArray(2, connection.createArrayOf("timestamp", column(transactions, trn -> toTimestamp(trn.getCreatedAt()))));
+            ps.setArray(3, connection.createArrayOf("timestamp", column(transactions, trn -> toTimestamp(trn.getUpdatedAt()))));
+            ps.setArray(4, connection.createArrayOf("numeric", column(transactions, Transaction::getAmount)));
+            ps.setArray(5, connection.createArrayOf("int4", column(transactions, Transaction::getStatus)));
+            ps.setArray(6, connection.createArrayOf("varchar", column(transactions, Transaction::getCurrency)));
+            ps.setArray(7, connection.createArrayOf("int8", column(transactions, Transaction::getCustId)));
+            ps.setArray(8, connection.createArrayOf("varchar", column(transactions, Transaction::getType)));
+            ps.setArray(9, connection.createArrayOf("varchar", column(transactions, Transaction::getComment)));
+            ps.setArray(10, connection.createArrayOf("int4", column(transactions, Transaction::getVersion)));
+            return ps;
+        }, (rs, rowNum) -> new TransactionKey(rs.getString("id"), rs.getTimestamp("created_at").toLocalDateTime()));
+        return new HashSet<>(written);
+    }
+
+    private static Object[] column(List<Transaction> transactions, Function<Transaction, Object> value) {
+        return transactions.stream().map(value).toArray();
+    }
+
+    @Override
+    public WriteOutcome upsertIfNewMessage(Idempotency idempotency, Transaction transaction) {
+        return jdbcTemplate.query(UPSERT_IF_NEW_MESSAGE, ps -> {
+            ps.setString(1, idempotency.getId());
+            ps.setDate(2, Date.valueOf(idempotency.getDate()));
+            ps.setObject(3, idempotency.getKafkaPartition(), Types.INTEGER);
+            setTransactionValues(ps, transaction, 4);
+        }, rs -> {
+            rs.next();
+            if (rs.getInt("new_message") == 0) {
+                return WriteOutcome.DUPLICATE;
+            }
+            return rs.getInt("written") == 0 ? WriteOutcome.STALE : WriteOutcome.WRITTEN;
+        });
+    }
+
+    private static void setTransactionValues(PreparedStatement ps, Transaction trn, int from) throws SQLException {
+        ps.setString(from, trn.getId());
+        ps.setTimestamp(from + 1, toTimestamp(trn.getCreatedAt()));
+        ps.setTimestamp(from + 2, toTimestamp(trn.getUpdatedAt()));
+        ps.setBigDecimal(from + 3, trn.getAmount());
+        ps.setObject(from + 4, trn.getStatus(), Types.INTEGER);
+        ps.setString(from + 5, trn.getCurrency());
+        ps.setObject(from + 6, trn.getCustId(), Types.BIGINT);
+        ps.setString(from + 7, trn.getType());
+        ps.setString(from + 8, trn.getComment());
+        ps.setObject(from + 9, trn.getVersion(), Types.INTEGER);
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime dateTime) {
+        return dateTime == null ? null : Timestamp.valueOf(dateTime);
+    }
+}
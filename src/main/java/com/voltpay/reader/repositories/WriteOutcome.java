@@ -0,0 +1,13 @@
+package com.voltpay.reader.repositories;
+
+/**
+ * Result of writing an event to read.idempotency and read.transaction in one statement.
+ */
+public enum WriteOutcome {
+    // the message id was new and the transaction was inserted or a newer version of it was written
+    WRITTEN,
+    // the message id was new, but the existing transaction has the same or a newer version, nothing was overwritten
+    STALE,
+    // the message id was already processed, nothing was written
+    DUPLICATE
+}
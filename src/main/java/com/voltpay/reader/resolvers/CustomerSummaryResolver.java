@@ -0,0 +1,33 @@
+package com.voltpay.reader.resolvers;
+
+import com.voltpay.reader.pojo.CustomerSummary;
+import com.voltpay.reader.repositories.CustomerSummaryRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.stereotype.Controller;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+
+@Controller
+@AllArgsConstructor
+public class CustomerSummaryResolver {
+
+    private final CustomerSummaryRepository customerSummaryRepository;
+
+    /**
+     * Totals of the customer's transactions created in the month, per currency and status.
+     * Read from read.customer_summary, so it costs the same regardless of the customer's history.
+     */
+    @QueryMapping
+    public CustomerSummary customerSummary(@Argument Long custId, @Argument String month) {
+        YearMonth yearMonth;
+        try {
+            yearMonth = YearMonth.parse(month);
+        } catch (DateTimeParseException ex) {
+            throw new InvalidArgumentException("month must be in the format yyyy-MM");
+        }
+        return new CustomerSummary(custId, yearMonth.toString(), customerSummaryRepository.findByCustIdAndMonth(custId, yearMonth));
+    }
+}
@@ -0,0 +1,15 @@
+package com.voltpay.reader.resolvers;
+
+/**
+ * A query argument the client sent is invalid, the message is returned to the client as is.
+ */
+public class InvalidArgumentException extends RuntimeException {
+
+    public InvalidArgumentException(String message) {
+        super(message);
+    }
+
+    public InvalidArgumentException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,22 +1,190 @@
 package com.voltpay.reader.resolvers;
 
-import com.voltpay.reader.entities.Transaction;
-import com.voltpay.reader.repositories.TransactionRepository;
-import lombok.AllArgsConstructor;
+import com.voltpay.reader.cache.CustomerTransactionCache;
+import com.voltpay.reader.pojo.CustomerTransactions;
+import com.voltpay.reader.pojo.TransactionConnection;
+import com.voltpay.reader.pojo.TransactionCursor;
+import com.voltpay.reader.pojo.TransactionFilter;
+import com.voltpay.reader.pojo.TransactionView;
+import com.voltpay.reader.repositories.TransactionColumn;
+import com.voltpay.reader.repositories.TransactionQueryRepository;
+import graphql.schema.DataFetchingFieldSelectionSet;
+import graphql.schema.SelectedField;
+import org.dataloader.DataLoader;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
 import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Controller
-@AllArgsConstructor
 public class TransactionQueryResolver {
 
-    private final TransactionRepository transactionRepository;
+    // fields of the transactions in a connection
+    private static final String NODE_FIELDS = "edges/node/*";
 
+    private static final String CUSTOMER_TRANSACTIONS_FIELDS = "transactions/*";
+
+    /**
+     * Key of the customerTransactions data loader.
+     */
+    public record CustomerQuery(Long custId, CustomerTransactionCache.Query query) {
+    }
+
+    private final TransactionQueryRepository transactionQueryRepository;
+
+    private final CustomerTransactionCache customerTransactionCache;
+
+    private final int defaultPageSize;
+
+    private final int maxPageSize;
+
+    private final int maxListSize;
+
+    private final int maxCustomersPerQuery;
+
+    private final int exportMaxPageSize;
+
+    private final Duration exportMaxWindow;
+
+    public TransactionQueryResolver(TransactionQueryRepository transactionQueryRepository,
+                                    CustomerTransactionCache customerTransactionCache,
+                                    BatchLoaderRegistry batchLoaderRegistry,
+                                    @Value("${graphql.transactions.default-page-size:50}") int defaultPageSize,
+                                    @Value("${graphql.transactions.max-page-size:500}") int maxPageSize,
+                                    @Value("${graphql.transactions.max-list-size:1000}") int maxListSize,
+                                    @Value("${graphql.transactions.max-customers-per-query:100}") int maxCustomersPerQuery,
+                                    @Value("${graphql.transactions.export.max-page-size:5000}") int exportMaxPageSize,
+                                    @Value("${graphql.transactions.export.max-window-days:31}") int exportMaxWindowDays) {
+        this.transactionQueryRepository = transactionQueryRepository;
+        this.customerTransactionCache = customerTransactionCache;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxListSize = maxListSize;
+        this.maxCustomersPerQuery = maxCustomersPerQuery;
+        this.exportMaxPageSize = exportMaxPageSize;
+        this.exportMaxWindow = Duration.ofDays(exportMaxWindowDays);
+        // customers requested in the same GraphQL document, e.g. by aliased fields, are loaded together
+        batchLoaderRegistry.<CustomerQuery, List<TransactionView>>forName("customerTransactions")
+            .registerMappedBatchLoader((keys, env) -> Mono.fromCallable(() -> loadCustomerTransactions(keys)));
+    }
+
+    /**
+     * Only the newest graphql.transactions.max-list-size transactions of the customer, use transactionsByCustId to get all of them.
+     */
+    @QueryMapping
+    public CompletableFuture<List<TransactionView>> transactionByCustId(@Argument Long custId, @Argument TransactionFilter filter,
+                                                                        DataFetchingFieldSelectionSet selectionSet,
+                                                                        DataLoader<CustomerQuery, List<TransactionView>> customerTransactions) {
+        if (custId == null) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return customerTransactions.load(new CustomerQuery(custId, new CustomerTransactionCache.Query(columns(selectionSet, "*"),
+            orNone(filter), null, maxListSize)));
+    }
+
+    /**
+     * The newest graphql.transactions.max-list-size transactions of each customer, read with a single query.
+     * At most graphql.transactions.max-customers-per-query customers can be requested.
+     */
     @QueryMapping
-    public List<Transaction> transactionByCustId(@Argument Long custId) {
-        return transactionRepository.findByCustId(custId);
+    public CompletableFuture<List<CustomerTransactions>> transactionsByCustIds(
+        @Argument List<Long> custIds, @Argument TransactionFilter filter, DataFetchingFieldSelectionSet selectionSet,
+        DataLoader<CustomerQuery, List<TransactionView>> customerTransactions) {
+        if (custIds.size() > maxCustomersPerQuery) {
+            throw new InvalidArgumentException("at most " + maxCustomersPerQuery + " customers can be requested");
+        }
+        CustomerTransactionCache.Query query = new CustomerTransactionCache.Query(columns(selectionSet, CUSTOMER_TRANSACTIONS_FIELDS),
+            orNone(filter), null, maxListSize);
+        return customerTransactions.loadMany(custIds.stream().map(custId -> new CustomerQuery(custId, query)).toList())
+            .thenApply(transactions -> IntStream.range(0, custIds.size())
+                .mapToObj(i -> new CustomerTransactions(custIds.get(i), transactions.get(i)))
+                .toList());
+    }
+
+    /**
+     * Page through the customer's transactions, newest first.
+     * first is capped at graphql.transactions.max-page-size.
+     */
+    @QueryMapping
+    public TransactionConnection transactionsByCustId(@Argument Long custId, @Argument TransactionFilter filter,
+                                                      @Argument Integer first, @Argument String after,
+                                                      DataFetchingFieldSelectionSet selectionSet) {
+        int limit = pageSize(first, maxPageSize);
+        // one more than the page to know if there is a next page
+        List<TransactionView> transactions = findByCustId(custId, new CustomerTransactionCache.Query(columns(selectionSet, NODE_FIELDS),
+            orNone(filter), TransactionCursor.decode(after), limit + 1));
+        return TransactionConnection.of(transactions, limit);
+    }
+
+    /**
+     * Page through all transactions created in the filter's from/to window, oldest first, for exports.
+     * The window is required and can be at most graphql.transactions.export.max-window-days long,
+     * first is capped at graphql.transactions.export.max-page-size.
+     */
+    @QueryMapping
+    public TransactionConnection allTransactions(@Argument TransactionFilter filter, @Argument Integer first, @Argument String after,
+                                                 DataFetchingFieldSelectionSet selectionSet) {
+        if (filter.from() == null || filter.to() == null) {
+            throw new InvalidArgumentException("from and to are required");
+        }
+        if (Duration.between(filter.from(), filter.to()).compareTo(exportMaxWindow) > 0) {
+            throw new InvalidArgumentException("from and to can be at most " + exportMaxWindow.toDays() + " days apart");
+        }
+        int limit = pageSize(first, exportMaxPageSize);
+        List<TransactionView> transactions = transactionQueryRepository.findAll(columns(selectionSet, NODE_FIELDS), filter,
+            TransactionCursor.decode(after), limit + 1);
+        return TransactionConnection.of(transactions, limit);
+    }
+
+    /**
+     * One query per distinct query shape, usually one for the whole document, customers which are cached aren't read.
+     */
+    private Map<CustomerQuery, List<TransactionView>> loadCustomerTransactions(Set<CustomerQuery> keys) {
+        Map<CustomerQuery, List<TransactionView>> result = new HashMap<>();
+        keys.stream().collect(Collectors.groupingBy(CustomerQuery::query, Collectors.mapping(CustomerQuery::custId, Collectors.toList())))
+            .forEach((query, custIds) -> customerTransactionCache.getAll(custIds, query,
+                    missed -> transactionQueryRepository.findByCustIds(missed, query.columns(), query.filter(), query.limit()))
+                .forEach((custId, transactions) -> result.put(new CustomerQuery(custId, query), transactions)));
+        return result;
+    }
+
+    /**
+     * Customer queries go through the cache, exports are too big and too rare to be worth caching.
+     */
+    private List<TransactionView> findByCustId(Long custId, CustomerTransactionCache.Query query) {
+        return customerTransactionCache.get(custId, query, () -> transactionQueryRepository.findByCustId(custId, query.columns(),
+            query.filter(), query.after(), query.limit()));
+    }
+
+    /**
+     * Only the columns of the fields the client selected are read, e.g. comment is skipped unless it was asked for.
+     */
+    private static Set<TransactionColumn> columns(DataFetchingFieldSelectionSet selectionSet, String fieldGlob) {
+        return TransactionColumn.forFields(selectionSet.getFields(fieldGlob).stream().map(SelectedField::getName).toList());
+    }
+
+    private static TransactionFilter orNone(TransactionFilter filter) {
+        return filter == null ? TransactionFilter.NONE : filter;
+    }
+
+    private int pageSize(Integer first, int max) {
+        if (first == null) {
+            return defaultPageSize;
+        }
+        if (first < 1) {
+            throw new InvalidArgumentException("first must be positive");
+        }
+        return Math.min(first, max);
     }
 }
@@ -0,0 +1,231 @@
+package com.voltpay.reader.serialization;
+
+import com.voltpay.reader.pojo.ReadEvent;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Compact binary layout of a ReadEvent, the schema lives here instead of in a registry.
+ * <pre>
+ * schema version   1 byte, currently 1
+ * presence mask    2 bytes, bit i is set when field i is not null
+ * fields           in the order messageId, id, createdAt, updatedAt, amount, status, currency, custId, type, comment, version
+ *   string         varint length + UTF-8 bytes
+ *   date time      zig-zag varint seconds since 1970-01-01T00:00 + varint nanos, the dates carry no zone
+ *   decimal        zig-zag varint scale + varint length + unscaled value as two's complement big-endian bytes
+ *   int and long   zig-zag varint
+ * </pre>
+ * A new field is appended with a new presence bit, a change of an existing field needs a new schema version.
+ */
+public final class ReadEventBinaryCodec {
+
+    static final byte SCHEMA_VERSION = 1;
+
+    private static final int MESSAGE_ID = 0;
+    private static final int ID = 1;
+    private static final int CREATED_AT = 2;
+    private static final int UPDATED_AT = 3;
+    private static final int AMOUNT = 4;
+    private static final int STATUS = 5;
+    private static final int CURRENCY = 6;
+    private static final int CUST_ID = 7;
+    private static final int TYPE = 8;
+    private static final int COMMENT = 9;
+    private static final int VERSION = 10;
+
+    private ReadEventBinaryCodec() {
+    }
+
+    public static byte[] encode(ReadEvent event) {
+        Output out = new Output();
+        out.writeByte(SCHEMA_VERSION);
+        int mask = bit(MESSAGE_ID, event.getMessageId()) | bit(ID, event.getId()) | bit(CREATED_AT, event.getCreatedAt())
+            | bit(UPDATED_AT, event.getUpdatedAt()) | bit(AMOUNT, event.getAmount()) | bit(STATUS, event.getStatus())
+            | bit(CURRENCY, event.getCurrency()) | bit(CUST_ID, event.getCustId()) | bit(TYPE, event.getType())
+            | bit(COMMENT, event.getComment()) | bit(VERSION, event.getVersion());
+        out.writeByte(mask >>> 8);
+        out.writeByte(mask);
+        out.writeString(event.getMessageId());
+        out.writeString(event.getId());
+        out.writeDateTime(event.getCreatedAt());
+        out.writeDateTime(event.getUpdatedAt());
+        out.writeDecimal(event.getAmount());
+        if (event.getStatus() != null) {
+            out.writeVarLong(zigZag(event.getStatus()));
+        }
+        out.writeString(event.getCurrency());
+        if (event.getCustId() != null) {
+            out.writeVarLong(zigZag(event.getCustId()));
+        }
+        out.writeString(event.getType());
+        out.writeString(event.getComment());
+        if (event.getVersion() != null) {
+            out.writeVarLong(zigZag(event.getVersion()));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode the event, the position of the buffer isn't moved.
+     *
+     * @param data encoded event
+     * @return the event
+     * @throws ReadEventDeserializationException if the data is not a ReadEvent of a known schema version
+     */
+    public static ReadEvent decode(ByteBuffer data) {
+        ByteBuffer in = data.duplicate();
+        try {
+            byte schemaVersion = in.get();
+            if (schemaVersion != SCHEMA_VERSION) {
+                throw new ReadEventDeserializationException("Unknown ReadEvent schema version " + schemaVersion);
+            }
+            int mask = (in.get() & 0xFF) << 8 | in.get() & 0xFF;
+            ReadEvent event = new ReadEvent();
+            event.setMessageId(has(mask, MESSAGE_ID) ? readString(in) : null);
+            event.setId(has(mask, ID) ? readString(in) : null);
+            event.setCreatedAt(has(mask, CREATED_AT) ? readDateTime(in) : null);
+            event.setUpdatedAt(has(mask, UPDATED_AT) ? readDateTime(in) : null);
+            event.setAmount(has(mask, AMOUNT) ? readDecimal(in) : null);
+            event.setStatus(has(mask, STATUS) ? (int) unZigZag(readVarLong(in)) : null);
+            event.setCurrency(has(mask, CURRENCY) ? readString(in) : null);
+            event.setCustId(has(mask, CUST_ID) ? unZigZag(readVarLong(in)) : null);
+            event.setType(has(mask, TYPE) ? readString(in) : null);
+            event.setComment(has(mask, COMMENT) ? readString(in) : null);
+            event.setVersion(has(mask, VERSION) ? (int) unZigZag(readVarLong(in)) : null);
+            return event;
+        } catch (BufferUnderflowException | IllegalArgumentException | DateTimeException ex) {
+            throw new ReadEventDeserializationException("Malformed binary ReadEvent", ex);
+        }
+    }
+
+    private static int bit(int field, Object value) {
+        return value == null ? 0 : 1 << field;
+    }
+
+    private static boolean has(int mask, int field) {
+        return (mask & 1 << field) != 0;
+    }
+
+    private static long zigZag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unZigZag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new ReadEventDeserializationException("Malformed varint in binary ReadEvent");
+    }
+
+    private static int readLength(ByteBuffer in) {
+        long length = readVarLong(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new ReadEventDeserializationException("Length " + length + " is beyond the end of the binary ReadEvent");
+        }
+        return (int) length;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readLength(in);
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static LocalDateTime readDateTime(ByteBuffer in) {
+        long seconds = unZigZag(readVarLong(in));
+        return LocalDateTime.ofEpochSecond(seconds, (int) readVarLong(in), ZoneOffset.UTC);
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer in) {
+        int scale = (int) unZigZag(readVarLong(in));
+        byte[] unscaled = new byte[readLength(in)];
+        in.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    /**
+     * Growable byte array, an event is usually well below the initial size.
+     */
+    private static final class Output {
+
+        private byte[] buffer = new byte[128];
+
+        private int size;
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeString(String value) {
+            if (value != null) {
+                writeBytes(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void writeDateTime(LocalDateTime value) {
+            if (value != null) {
+                writeVarLong(zigZag(value.toEpochSecond(ZoneOffset.UTC)));
+                writeVarLong(value.getNano());
+            }
+        }
+
+        void writeDecimal(BigDecimal value) {
+            if (value != null) {
+                writeVarLong(zigZag(value.scale()));
+                writeBytes(value.unscaledValue().toByteArray());
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensureCapacity(int length) {
+            if (size + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.voltpay.reader.serialization;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+/**
+ * A read-topic record which isn't a ReadEvent, e.g. malformed JSON or a field of the wrong type.
+ * Not retryable, the error handler sends the raw record to the DLT.
+ */
+public class ReadEventDeserializationException extends SerializationException {
+
+    public ReadEventDeserializationException(String message) {
+        super(message);
+    }
+
+    public ReadEventDeserializationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,175 @@
+package com.voltpay.reader.serialization;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.voltpay.reader.pojo.ReadEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * Deserializer of the read-topic records, reads the JSON with a streaming parser straight into a ReadEvent.
+ * Compared to the JsonDeserializer there is no type header resolution and no reflective binding.
+ * Records with the binary read-event-encoding header are decoded by the ReadEventBinaryCodec instead.
+ * Accepts what the writer's ObjectMapper produces, dates as [year, month, day, hour, minute, second, nano] arrays or ISO strings.
+ * Unknown fields are skipped, anything else that doesn't fit a ReadEvent fails with a ReadEventDeserializationException.
+ */
+public class ReadEventDeserializer implements Deserializer<ReadEvent> {
+
+    // thread safe, the parsers it creates are not
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Override
+    public ReadEvent deserialize(String topic, byte[] data) {
+        return data == null ? null : parse(data, 0, data.length);
+    }
+
+    @Override
+    public ReadEvent deserialize(String topic, Headers headers, byte[] data) {
+        return data == null ? null : deserialize(topic, headers, ByteBuffer.wrap(data));
+    }
+
+    @Override
+    public ReadEvent deserialize(String topic, Headers headers, ByteBuffer data) {
+        if (data == null) {
+            return null;
+        }
+        if (ReadEventEncoding.of(headers) == ReadEventEncoding.BINARY) {
+            return ReadEventBinaryCodec.decode(data);
+        }
+        if (data.hasArray()) {
+            // parsed in place, the position of the buffer isn't moved
+            return parse(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    private static ReadEvent parse(byte[] data, int offset, int length) {
+        try (JsonParser parser = JSON_FACTORY.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ReadEventDeserializationException("Expected a JSON object, got " + parser.currentToken());
+            }
+            ReadEvent event = new ReadEvent();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("messageId".equals(field)) {
+                    event.setMessageId(readString(parser));
+                } else if ("id".equals(field)) {
+                    event.setId(readString(parser));
+                } else if ("createdAt".equals(field)) {
+                    event.setCreatedAt(readDateTime(parser));
+                } else if ("updatedAt".equals(field)) {
+                    event.setUpdatedAt(readDateTime(parser));
+                } else if ("amount".equals(field)) {
+                    event.setAmount(readDecimal(parser));
+                } else if ("status".equals(field)) {
+                    event.setStatus(readInteger(parser));
+                } else if ("currency".equals(field)) {
+                    event.setCurrency(readString(parser));
+                } else if ("custId".equals(field)) {
+                    event.setCustId(readLong(parser));
+                } else if ("type".equals(field)) {
+                    event.setType(readString(parser));
+                } else if ("comment".equals(field)) {
+                    event.setComment(readString(parser));
+                } else if ("version".equals(field)) {
+                    event.setVersion(readInteger(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw new ReadEventDeserializationException("Malformed ReadEvent, unexpected " + parser.currentToken());
+            }
+            return event;
+        } catch (IOException | NumberFormatException | DateTimeException ex) {
+            throw new ReadEventDeserializationException("Malformed ReadEvent: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw unexpected(parser);
+        }
+        return parser.getText();
+    }
+
+    private static BigDecimal readDecimal(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return new BigDecimal(parser.getText());
+        }
+        if (!token.isNumeric()) {
+            throw unexpected(parser);
+        }
+        return parser.getDecimalValue();
+    }
+
+    private static Integer readInteger(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_NUMBER_INT) {
+            throw unexpected(parser);
+        }
+        return parser.getIntValue();
+    }
+
+    private static Long readLong(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_NUMBER_INT) {
+            throw unexpected(parser);
+        }
+        return parser.getLongValue();
+    }
+
+    private static LocalDateTime readDateTime(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return LocalDateTime.parse(parser.getText());
+        }
+        if (token != JsonToken.START_ARRAY) {
+            throw unexpected(parser);
+        }
+        // seconds and nanos are left out by the writer when they are 0
+        int[] parts = new int[7];
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.VALUE_NUMBER_INT || count == parts.length) {
+                throw unexpected(parser);
+            }
+            parts[count++] = parser.getIntValue();
+        }
+        if (count < 5) {
+            throw new ReadEventDeserializationException("Date time " + parser.currentName() + " needs at least 5 parts, got " + count);
+        }
+        return LocalDateTime.of(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]);
+    }
+
+    private static ReadEventDeserializationException unexpected(JsonParser parser) throws IOException {
+        return new ReadEventDeserializationException("Unexpected " + parser.currentToken() + " for field " + parser.currentName());
+    }
+}
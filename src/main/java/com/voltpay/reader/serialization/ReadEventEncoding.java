@@ -0,0 +1,46 @@
+package com.voltpay.reader.serialization;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Wire format of a ReadEvent, carried in the read-event-encoding record header.
+ * A record without the header is JSON, so the producers can switch to binary one by one.
+ */
+public enum ReadEventEncoding {
+
+    JSON, BINARY;
+
+    public static final String HEADER = "read-event-encoding";
+
+    private final byte[] headerValue = name().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * @param headers headers of the record
+     * @return encoding of the record, JSON if the header is missing
+     */
+    public static ReadEventEncoding of(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(HEADER);
+        if (header == null || Arrays.equals(header.value(), JSON.headerValue)) {
+            return JSON;
+        }
+        if (Arrays.equals(header.value(), BINARY.headerValue)) {
+            return BINARY;
+        }
+        throw new ReadEventDeserializationException("Unknown " + HEADER + " " + new String(header.value(), StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Replace the header of the record, a DLT record keeps the headers of the original one.
+     *
+     * @param headers headers of the record
+     */
+    public void writeTo(Headers headers) {
+        headers.remove(HEADER);
+        headers.add(HEADER, headerValue);
+    }
+}
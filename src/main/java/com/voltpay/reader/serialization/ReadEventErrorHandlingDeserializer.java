@@ -0,0 +1,56 @@
+package com.voltpay.reader.serialization;
+
+import com.voltpay.reader.metrics.ConsumerMetrics;
+import com.voltpay.reader.metrics.Stage;
+import com.voltpay.reader.pojo.ReadEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ErrorHandlingDeserializer around the ReadEventDeserializer.
+ * A record which can't be deserialized reaches the listener container as a DeserializationException,
+ * which the error handler doesn't retry and publishes to the DLT as the original bytes.
+ * ErrorHandlingDeserializer only implements the byte[] variants, so Kafka would copy every record into an array first,
+ * here the ByteBuffer is passed through and the record is copied only when it fails.
+ * Created with the ConsumerMetrics it times the deserialization of every record, failed ones included.
+ */
+public class ReadEventErrorHandlingDeserializer extends ErrorHandlingDeserializer<ReadEvent> {
+
+    private final ReadEventDeserializer delegate;
+
+    // null when created by Kafka from the class name
+    private final ConsumerMetrics consumerMetrics;
+
+    public ReadEventErrorHandlingDeserializer() {
+        this(null);
+    }
+
+    public ReadEventErrorHandlingDeserializer(ConsumerMetrics consumerMetrics) {
+        this(new ReadEventDeserializer(), consumerMetrics);
+    }
+
+    private ReadEventErrorHandlingDeserializer(ReadEventDeserializer delegate, ConsumerMetrics consumerMetrics) {
+        super(delegate);
+        this.delegate = delegate;
+        this.consumerMetrics = consumerMetrics;
+    }
+
+    @Override
+    public ReadEvent deserialize(String topic, Headers headers, ByteBuffer data) {
+        long start = System.nanoTime();
+        try {
+            return delegate.deserialize(topic, headers, data);
+        } catch (Exception ex) {
+            SerializationUtils.deserializationException(headers, Utils.toNullableArray(data), ex, false);
+            return null;
+        } finally {
+            if (consumerMetrics != null) {
+                consumerMetrics.stage(Stage.DESERIALIZE, System.nanoTime() - start);
+            }
+        }
+    }
+}
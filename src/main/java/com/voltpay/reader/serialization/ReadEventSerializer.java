@@ -0,0 +1,48 @@
+package com.voltpay.reader.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.voltpay.reader.pojo.ReadEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+/**
+ * Serializer of the ReadEvents the service publishes, in the encoding chosen by kafka.producer.encoding.
+ * The encoding is written to the read-event-encoding header, JSON keeps the type headers of the JsonSerializer.
+ */
+public class ReadEventSerializer implements Serializer<ReadEvent> {
+
+    private final ReadEventEncoding encoding;
+
+    private final JsonSerializer<ReadEvent> jsonSerializer;
+
+    public ReadEventSerializer(ReadEventEncoding encoding, ObjectMapper objectMapper) {
+        this.encoding = encoding;
+        this.jsonSerializer = new JsonSerializer<>(objectMapper);
+    }
+
+    /**
+     * Without headers the encoding can't be told, so it is always JSON.
+     */
+    @Override
+    public byte[] serialize(String topic, ReadEvent data) {
+        return jsonSerializer.serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, ReadEvent data) {
+        if (data == null) {
+            return null;
+        }
+        encoding.writeTo(headers);
+        if (encoding == ReadEventEncoding.BINARY) {
+            return ReadEventBinaryCodec.encode(data);
+        }
+        return jsonSerializer.serialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonSerializer.close();
+    }
+}
@@ -1,5 +1,23 @@
 package com.voltpay.reader.utils;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 public enum Currency {
-    EUR, BGN
+    EUR, BGN;
+
+    private static final Map<String, Currency> BY_CODE = Arrays.stream(values())
+        .collect(Collectors.toUnmodifiableMap(Enum::name, Function.identity()));
+
+    /**
+     * Unlike valueOf it doesn't throw for an unknown code.
+     *
+     * @param code currency code as sent in the event
+     * @return the currency, null if the code is unknown
+     */
+    public static Currency fromCode(String code) {
+        return code == null ? null : BY_CODE.get(code);
+    }
 }
@@ -2,14 +2,32 @@ package com.voltpay.reader.utils;
 
 import lombok.Getter;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 @Getter
 public enum TrnStatus {
 
     SUCCESS(2), FAIL(-2), PENDING(0);
 
+    private static final Map<Integer, TrnStatus> BY_VALUE = Arrays.stream(values())
+        .collect(Collectors.toUnmodifiableMap(TrnStatus::getValue, Function.identity()));
+
     private Integer value;
 
     TrnStatus(Integer value) {
         this.value = value;
     }
+
+    /**
+     * Status with the value sent in the event.
+     *
+     * @param value status as sent in the event
+     * @return the status, null if the value is unknown
+     */
+    public static TrnStatus fromValue(Integer value) {
+        return value == null ? null : BY_VALUE.get(value);
+    }
 }
@@ -1,5 +1,23 @@
 package com.voltpay.reader.utils;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 public enum TrnType {
-    BWI, VSA, MSC
+    BWI, VSA, MSC;
+
+    private static final Map<String, TrnType> BY_CODE = Arrays.stream(values())
+        .collect(Collectors.toUnmodifiableMap(Enum::name, Function.identity()));
+
+    /**
+     * Unlike valueOf it doesn't throw for an unknown code.
+     *
+     * @param code transaction type as sent in the event
+     * @return the type, null if the code is unknown
+     */
+    public static TrnType fromCode(String code) {
+        return code == null ? null : BY_CODE.get(code);
+    }
 }
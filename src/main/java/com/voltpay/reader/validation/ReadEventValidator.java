@@ -0,0 +1,64 @@
+package com.voltpay.reader.validation;
+
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.utils.Currency;
+import com.voltpay.reader.utils.TrnStatus;
+import com.voltpay.reader.utils.TrnType;
+
+/**
+ * Validation of the events from read-topic, shared by the consumers.
+ * Currency, status and type are only checked to be known, the event keeps the values as sent and they are stored as such.
+ */
+public final class ReadEventValidator {
+
+    private ReadEventValidator() {
+    }
+
+    /**
+     * @param event event from read-topic
+     * @return reason the event is rejected for, null if it is valid
+     */
+    public static Rejection validate(ReadEvent event) {
+        if (event == null || event.getMessageId() == null) {
+            return Rejection.MISSING_MESSAGE_ID;
+        }
+        if (event.getId() == null) {
+            return Rejection.MISSING_ID;
+        }
+        if (event.getAmount() == null) {
+            return Rejection.MISSING_AMOUNT;
+        }
+        if (event.getCreatedAt() == null) {
+            return Rejection.MISSING_CREATED_AT;
+        }
+        if (event.getCurrency() == null) {
+            return Rejection.MISSING_CURRENCY;
+        }
+        if (event.getCustId() == null) {
+            return Rejection.MISSING_CUST_ID;
+        }
+        if (event.getStatus() == null) {
+            return Rejection.MISSING_STATUS;
+        }
+        if (event.getType() == null) {
+            return Rejection.MISSING_TYPE;
+        }
+        if (event.getUpdatedAt() == null) {
+            return Rejection.MISSING_UPDATED_AT;
+        }
+        // an upsert only overwrites a lower version, a transaction stored without one could never be updated
+        if (event.getVersion() == null) {
+            return Rejection.MISSING_VERSION;
+        }
+        if (Currency.fromCode(event.getCurrency()) == null) {
+            return Rejection.UNKNOWN_CURRENCY;
+        }
+        if (TrnStatus.fromValue(event.getStatus()) == null) {
+            return Rejection.UNKNOWN_STATUS;
+        }
+        if (TrnType.fromCode(event.getType()) == null) {
+            return Rejection.UNKNOWN_TYPE;
+        }
+        return null;
+    }
+}
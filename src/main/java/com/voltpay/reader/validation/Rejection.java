@@ -0,0 +1,33 @@
+package com.voltpay.reader.validation;
+
+import java.util.Locale;
+
+/**
+ * Reason why an event from read-topic isn't processed, the first check an event fails.
+ */
+public enum Rejection {
+
+    // warmup events are sent without a message id
+    MISSING_MESSAGE_ID,
+    MISSING_ID,
+    MISSING_AMOUNT,
+    MISSING_CREATED_AT,
+    MISSING_CURRENCY,
+    MISSING_CUST_ID,
+    MISSING_STATUS,
+    MISSING_TYPE,
+    MISSING_UPDATED_AT,
+    MISSING_VERSION,
+    UNKNOWN_CURRENCY,
+    UNKNOWN_STATUS,
+    UNKNOWN_TYPE;
+
+    private final String tag = name().toLowerCase(Locale.ROOT);
+
+    /**
+     * @return value of the reason tag of the metrics
+     */
+    public String tag() {
+        return tag;
+    }
+}
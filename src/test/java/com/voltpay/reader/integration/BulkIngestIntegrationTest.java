@@ -0,0 +1,250 @@
+package com.voltpay.reader.integration;
+
+import com.voltpay.reader.entities.Idempotency;
+import com.voltpay.reader.entities.Transaction;
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.repositories.BulkIngestRepository;
+import com.voltpay.reader.repositories.BulkMergeResult;
+import com.voltpay.reader.repositories.IdempotencyRepository;
+import com.voltpay.reader.repositories.TransactionKey;
+import com.voltpay.reader.repositories.TransactionRepository;
+import com.voltpay.reader.utils.Currency;
+import com.voltpay.reader.utils.TrnStatus;
+import com.voltpay.reader.utils.TrnType;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.kafka.ConfluentKafkaContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(properties = "kafka.consumer.mode=bulk")
+@ActiveProfiles("test")
+public class BulkIngestIntegrationTest {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("10.5");
+    // truncated to micros, what PostgreSQL stores
+    private static final LocalDateTime CREATED_AT = LocalDateTime.now().minusMinutes(1).truncatedTo(ChronoUnit.MICROS);
+    private static final LocalDateTime UPDATED_AT = CREATED_AT.plusSeconds(1);
+    private static final Integer VERSION = 100;
+    private static final String CURRENCY = Currency.EUR.toString();
+    private static final Long CUST_ID = 1L;
+    private static final Integer STATUS = TrnStatus.SUCCESS.getValue();
+    private static final String TYPE = TrnType.BWI.toString();
+    private static final String QUOTED_COMMENT = "a \"quoted\", comment\nover two lines";
+
+    private static ConfluentKafkaContainer kafka = new ConfluentKafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    private static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+        .withDatabaseName("read_db")
+        .withUsername("user")
+        .withPassword("password")
+        .withInitScript("init.sql");
+
+    @Autowired
+    private BulkIngestRepository bulkIngestRepository;
+
+    @Autowired
+    private IdempotencyRepository idempotencyRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private KafkaTemplate<String, ReadEvent> kafkaTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeAll
+    static void beforeAll() {
+        kafka.start();
+        postgres.start();
+
+        createTopics();
+    }
+
+    private static void createTopics() {
+        Properties props = new Properties();
+        props.put("bootstrap.servers", kafka.getBootstrapServers());
+
+        try (AdminClient adminClient = AdminClient.create(props)) {
+            NewTopic readTopic = new NewTopic("read-topic", 1, (short) 1);
+            NewTopic dltTopic = new NewTopic("read-dlt", 1, (short) 1);
+            adminClient.createTopics(List.of(readTopic, dltTopic)).all().get();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to create topic", e);
+        }
+    }
+
+    @AfterAll
+    static void afterAll() {
+        postgres.stop();
+        kafka.stop();
+    }
+
+    @DynamicPropertySource
+    static void overrideProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+    }
+
+    @BeforeEach
+    void cleanUpDatabase() {
+        transactionRepository.deleteAll();
+        idempotencyRepository.deleteAll();
+    }
+
+    @Test
+    public void given_awkwardComments_when_copyAndMergeTwice_then_keepValuesAndSkipReplay() {
+        // GIVEN
+        List<Idempotency> idempotencies = List.of(idempotency("copy-msg1", 0), idempotency("copy-msg2", null), idempotency("copy-msg3", 1));
+        Map<String, Transaction> transactions = new LinkedHashMap<>();
+        transactions.put("copy-msg1", transaction("copy-id1", null));
+        transactions.put("copy-msg2", transaction("copy-id2", ""));
+        transactions.put("copy-msg3", transaction("copy-id3", QUOTED_COMMENT));
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        // WHEN the second merge runs on a connection which may already have the staging tables, emptied by the first commit
+        BulkMergeResult first = transactionTemplate.execute(status -> bulkIngestRepository.copyAndMerge(idempotencies, transactions));
+        BulkMergeResult replay = transactionTemplate.execute(status -> bulkIngestRepository.copyAndMerge(idempotencies, transactions));
+        // THEN
+        assertEquals(Set.of("copy-msg1", "copy-msg2", "copy-msg3"), first.newMessageIds());
+        assertEquals(transactions.values().stream().map(trn -> new TransactionKey(trn.getId(), trn.getCreatedAt())).collect(Collectors.toSet()),
+            first.writtenTransactions());
+        assertEquals(Set.of(), replay.newMessageIds());
+        assertEquals(Set.of(), replay.writtenTransactions());
+
+        Map<String, Transaction> stored = transactionRepository.findAll().stream()
+            .collect(Collectors.toMap(Transaction::getId, Function.identity()));
+        assertEquals(3, stored.size());
+        assertNull(stored.get("copy-id1").getComment());
+        assertEquals("", stored.get("copy-id2").getComment());
+        assertEquals(QUOTED_COMMENT, stored.get("copy-id3").getComment());
+        assertEquals(AMOUNT.setScale(6), stored.get("copy-id3").getAmount());
+        assertEquals(CREATED_AT, stored.get("copy-id3").getCreatedAt());
+        assertEquals(UPDATED_AT, stored.get("copy-id3").getUpdatedAt());
+        assertNull(idempotencyRepository.findById("copy-msg2").get().getKafkaPartition());
+    }
+
+    @Test
+    public void given_processedMessageWithNewerVersion_when_copyAndMerge_then_skipItsTransaction() {
+        // GIVEN
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.execute(status -> bulkIngestRepository.copyAndMerge(List.of(idempotency("skip-msg1", 0)),
+            Map.of("skip-msg1", transaction("skip-id1", "first"))));
+        Transaction newer = transaction("skip-id1", "newer");
+        newer.setVersion(VERSION + 1);
+        // WHEN the processed message comes again with a newer version of its transaction, next to a new message
+        BulkMergeResult result = transactionTemplate.execute(status -> bulkIngestRepository.copyAndMerge(
+            List.of(idempotency("skip-msg1", 0), idempotency("skip-msg2", 0)),
+            Map.of("skip-msg1", newer, "skip-msg2", transaction("skip-id2", "second"))));
+        // THEN only the transaction of the new message is merged
+        assertEquals(Set.of("skip-msg2"), result.newMessageIds());
+        assertEquals(Set.of(new TransactionKey("skip-id2", CREATED_AT)), result.writtenTransactions());
+        Transaction stored = transactionRepository.findAll().stream().filter(trn -> "skip-id1".equals(trn.getId())).findFirst().get();
+        assertEquals(VERSION, stored.getVersion());
+        assertEquals("first", stored.getComment());
+    }
+
+    @Test
+    public void given_replayedPoll_when_processMessages_then_mergeOnceAndCountDuplicates() {
+        // GIVEN
+        double duplicatesBefore = meterRegistry.get("reader.events.duplicate").counter().count();
+        List<ReadEvent> events = List.of(buildReadEvent("poll-msg1", "poll-id1", null), buildReadEvent("poll-msg2", "poll-id2", ""),
+            buildReadEvent("poll-msg3", "poll-id3", QUOTED_COMMENT));
+        events.forEach(event -> kafkaTemplate.send("read-topic", CUST_ID.toString(), event));
+        await()
+            .atMost(10, TimeUnit.SECONDS)
+            .pollInterval(2, TimeUnit.SECONDS).untilAsserted(() -> assertEquals(3, transactionRepository.count()));
+        // WHEN the same poll is consumed again, e.g. after a rebalance before the offsets were committed
+        events.forEach(event -> kafkaTemplate.send("read-topic", CUST_ID.toString(), event));
+        // THEN every replayed message is skipped, by the idempotency filter or by the merge, the transactions are left as they are
+        await()
+            .atMost(10, TimeUnit.SECONDS)
+            .pollInterval(2, TimeUnit.SECONDS).untilAsserted(() -> {
+                assertEquals(3, meterRegistry.get("reader.events.duplicate").counter().count() - duplicatesBefore);
+                assertEquals(3, idempotencyRepository.count());
+                Map<String, Transaction> stored = transactionRepository.findAll().stream()
+                    .collect(Collectors.toMap(Transaction::getId, Function.identity()));
+                assertEquals(3, stored.size());
+                assertNull(stored.get("poll-id1").getComment());
+                assertEquals("", stored.get("poll-id2").getComment());
+                assertEquals(QUOTED_COMMENT, stored.get("poll-id3").getComment());
+            });
+    }
+
+    private static Idempotency idempotency(String messageId, Integer partition) {
+        Idempotency idempotency = new Idempotency();
+        idempotency.setId(messageId);
+        idempotency.setDate(LocalDate.now());
+        idempotency.setKafkaPartition(partition);
+        return idempotency;
+    }
+
+    private static Transaction transaction(String id, String comment) {
+        Transaction trn = new Transaction();
+        trn.setId(id);
+        trn.setCreatedAt(CREATED_AT);
+        trn.setUpdatedAt(UPDATED_AT);
+        trn.setAmount(AMOUNT);
+        trn.setStatus(STATUS);
+        trn.setCurrency(CURRENCY);
+        trn.setCustId(CUST_ID);
+        trn.setType(TYPE);
+        trn.setComment(comment);
+        trn.setVersion(VERSION);
+        return trn;
+    }
+
+    private ReadEvent buildReadEvent(String messageId, String id, String comment) {
+        return ReadEvent.builder()
+            .messageId(messageId)
+            .id(id)
+            .amount(AMOUNT)
+            .createdAt(CREATED_AT)
+            .currency(CURRENCY)
+            .custId(CUST_ID)
+            .status(STATUS)
+            .type(TYPE)
+            .updatedAt(UPDATED_AT)
+            .comment(comment)
+            .version(VERSION)
+            .build();
+    }
+}
@@ -8,6 +8,7 @@ import com.voltpay.reader.repositories.TransactionRepository;
 import com.voltpay.reader.utils.Currency;
 import com.voltpay.reader.utils.TrnStatus;
 import com.voltpay.reader.utils.TrnType;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.junit.Assert;
@@ -17,6 +18,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
@@ -70,6 +72,12 @@ public class ReadConsumerIntegrationTest {
     @Autowired
     private KafkaTemplate<String, ReadEvent> kafkaTemplate;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @BeforeAll
     static void beforeAll() {
         kafka.start();
@@ -131,6 +139,9 @@ public class ReadConsumerIntegrationTest {
                 Optional<Idempotency> idempotency = idempotencyRepository.findById(event.getMessageId());
                 assertNotNull(idempotency.get());
                 Assert.assertEquals(event.getMessageId(), idempotency.get().getId());
+                // the duplicate isn't counted in the customer's totals either
+                assertEquals(1L, jdbcTemplate.queryForObject("SELECT tx_count FROM read.customer_summary WHERE cust_id = ? AND status = ?",
+                    Long.class, CUST_ID, STATUS));
             });
     }
 
@@ -171,6 +182,66 @@ public class ReadConsumerIntegrationTest {
             });
     }
 
+    @Test
+    public void given_olderVersionAfterNewer_when_processMessage_then_keepNewerAndCountStale() {
+        // GIVEN
+        double staleBefore = staleCount();
+        ReadEvent newer = buildReadEvent();
+        newer.setMessageId(MESSAGE_ID + "-v2");
+        newer.setVersion(VERSION + 1);
+        newer.setStatus(TrnStatus.SUCCESS.getValue());
+        ReadEvent older = buildReadEvent();
+        older.setMessageId(MESSAGE_ID + "-v1");
+        older.setStatus(TrnStatus.PENDING.getValue());
+        // WHEN out of order, same key so both land on the partition in this order
+        kafkaTemplate.send("read-topic", CUST_ID.toString(), newer);
+        kafkaTemplate.send("read-topic", CUST_ID.toString(), older);
+        // THEN both messages are recorded, the transaction stays at the newer version
+        await()
+            .atMost(10, TimeUnit.SECONDS)
+            .pollInterval(2, TimeUnit.SECONDS).untilAsserted(() -> {
+                assertEquals(2, idempotencyRepository.count());
+                List<Transaction> transactions = transactionRepository.findAll();
+                assertEquals(1, transactions.size());
+                assertEquals(VERSION + 1, transactions.get(0).getVersion());
+                assertEquals(TrnStatus.SUCCESS.getValue(), transactions.get(0).getStatus());
+                assertEquals(1, staleCount() - staleBefore);
+            });
+    }
+
+    @Test
+    public void given_deadLetterReplayOfWrittenVersion_when_processMessage_then_leaveTransactionAsItIs() {
+        // GIVEN the same version was already written under another message id, e.g. resent by the producer
+        double staleBefore = staleCount();
+        ReadEvent written = buildReadEvent();
+        // the idempotency filter outlives the tests, a message id of another test would be skipped as recently processed
+        written.setMessageId(MESSAGE_ID + "-written");
+        kafkaTemplate.send("read-topic", CUST_ID.toString(), written);
+        await()
+            .atMost(10, TimeUnit.SECONDS)
+            .pollInterval(2, TimeUnit.SECONDS).untilAsserted(() -> assertEquals(1, transactionRepository.count()));
+        ReadEvent replayed = buildReadEvent();
+        replayed.setMessageId(MESSAGE_ID + "-dlt");
+        replayed.setComment("replayed");
+        // WHEN republished from the DLT the way the Dead Letter consumer does it
+        kafkaTemplate.send("read-topic", CUST_ID.toString(), replayed);
+        // THEN the replayed message is recorded, but an equal version doesn't overwrite the transaction
+        await()
+            .atMost(10, TimeUnit.SECONDS)
+            .pollInterval(2, TimeUnit.SECONDS).untilAsserted(() -> {
+                assertEquals(2, idempotencyRepository.count());
+                List<Transaction> transactions = transactionRepository.findAll();
+                assertEquals(1, transactions.size());
+                assertEquals(COMMENT, transactions.get(0).getComment());
+                assertEquals(VERSION, transactions.get(0).getVersion());
+                assertEquals(1, staleCount() - staleBefore);
+            });
+    }
+
+    private double staleCount() {
+        return meterRegistry.get("reader.events.stale").counter().count();
+    }
+
     /**
      * Compare actual and expected date time.
      * Truncate down to millis as we don't need to be more specific.
@@ -0,0 +1,76 @@
+package com.voltpay.reader.unit.admission;
+
+import com.voltpay.reader.admission.ReadAdmission;
+import com.voltpay.reader.admission.ReadRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReadAdmissionTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ReadAdmission readAdmission;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        readAdmission = new ReadAdmission(meterRegistry, 1, 1, 50);
+    }
+
+    @Test
+    public void given_freePermit_when_call_then_runRead() {
+        // GIVEN
+        // WHEN
+        String result = readAdmission.call(() -> "read");
+        // THEN
+        assertEquals("read", result);
+        assertEquals(0, meterRegistry.counter("reader.graphql.admission.rejected").count());
+    }
+
+    @Test
+    public void given_failedRead_when_call_then_releasePermit() {
+        // GIVEN
+        assertThrows(IllegalStateException.class, () -> readAdmission.call(() -> {
+            throw new IllegalStateException();
+        }));
+        // WHEN
+        String result = readAdmission.call(() -> "read");
+        // THEN
+        assertEquals("read", result);
+    }
+
+    @Test
+    public void given_runningRead_when_callWaitsTooLong_then_reject() throws Exception {
+        // GIVEN
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> readAdmission.call(() -> {
+            running.countDown();
+            await(release);
+            return "slow";
+        }));
+        running.await(1, TimeUnit.SECONDS);
+        // WHEN
+        assertThrows(ReadRejectedException.class, () -> readAdmission.call(() -> "read"));
+        // THEN the running read isn't affected
+        release.countDown();
+        assertEquals("slow", slow.get(1, TimeUnit.SECONDS));
+        assertEquals(1, meterRegistry.counter("reader.graphql.admission.rejected").count());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.voltpay.reader.unit.cache;
+
+import com.voltpay.reader.cache.CustomerTransactionCache;
+import com.voltpay.reader.pojo.TransactionFilter;
+import com.voltpay.reader.pojo.TransactionView;
+import com.voltpay.reader.repositories.TransactionColumn;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CustomerTransactionCacheTest {
+
+    private static final Long CUST_ID = 1L;
+    private static final CustomerTransactionCache.Query QUERY = new CustomerTransactionCache.Query(EnumSet.allOf(TransactionColumn.class),
+        TransactionFilter.NONE, null, 10);
+    private static final List<TransactionView> TRANSACTIONS = List.of(
+        new TransactionView("id", LocalDateTime.now(), null, null, null, null, CUST_ID, null, null, null));
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CustomerTransactionCache cache;
+
+    private AtomicInteger loads;
+
+    private Supplier<List<TransactionView>> loader;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new CustomerTransactionCache(meterRegistry, true, 100, 2, Duration.ofMinutes(1), Duration.ZERO);
+        loads = new AtomicInteger();
+        loader = () -> {
+            loads.incrementAndGet();
+            return TRANSACTIONS;
+        };
+    }
+
+    @Test
+    public void given_cachedQuery_when_get_then_returnWithoutLoading() {
+        // GIVEN
+        cache.get(CUST_ID, QUERY, loader);
+        // WHEN
+        List<TransactionView> transactions = cache.get(CUST_ID, QUERY, loader);
+        // THEN
+        assertEquals(TRANSACTIONS, transactions);
+        assertEquals(1, loads.get());
+        assertEquals(1, meterRegistry.counter("reader.transactions.cache.hits").count());
+        assertEquals(1, meterRegistry.counter("reader.transactions.cache.misses").count());
+    }
+
+    @Test
+    public void given_invalidatedCustomer_when_get_then_loadAgain() {
+        // GIVEN
+        cache.get(CUST_ID, QUERY, loader);
+        cache.get(2L, QUERY, loader);
+        // WHEN
+        cache.invalidate(CUST_ID);
+        cache.get(CUST_ID, QUERY, loader);
+        cache.get(2L, QUERY, loader);
+        // THEN only the invalidated customer is read again
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void given_invalidatedWithinReplicaLagWindow_when_get_then_loadWithoutCaching() {
+        // GIVEN
+        cache = new CustomerTransactionCache(meterRegistry, true, 100, 2, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        cache.invalidate(CUST_ID);
+        // WHEN a replica may not have the commit yet
+        cache.get(CUST_ID, QUERY, loader);
+        cache.get(CUST_ID, QUERY, loader);
+        cache.get(2L, QUERY, loader);
+        cache.get(2L, QUERY, loader);
+        // THEN only the customer which wasn't invalidated is cached
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void given_invalidationDuringLoad_when_get_then_dontCacheStaleResult() {
+        // GIVEN the customer's transactions are committed while its query is being read
+        Supplier<List<TransactionView>> racingLoader = () -> {
+            cache.invalidate(CUST_ID);
+            return loader.get();
+        };
+        // WHEN
+        cache.get(CUST_ID, QUERY, racingLoader);
+        cache.get(CUST_ID, QUERY, loader);
+        // THEN
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void given_maxQueriesPerCustomer_when_get_then_dontCacheMore() {
+        // GIVEN
+        CustomerTransactionCache.Query other = new CustomerTransactionCache.Query(QUERY.columns(), QUERY.filter(), null, 20);
+        CustomerTransactionCache.Query third = new CustomerTransactionCache.Query(QUERY.columns(), QUERY.filter(), null, 30);
+        cache.get(CUST_ID, QUERY, loader);
+        cache.get(CUST_ID, other, loader);
+        // WHEN
+        cache.get(CUST_ID, third, loader);
+        cache.get(CUST_ID, third, loader);
+        // THEN
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void given_partlyCachedCustomers_when_getAll_then_loadOnlyMissed() {
+        // GIVEN
+        cache.get(CUST_ID, QUERY, loader);
+        List<Set<Long>> loaded = new ArrayList<>();
+        // WHEN
+        Map<Long, List<TransactionView>> transactions = cache.getAll(List.of(CUST_ID, 2L, 3L), QUERY, missed -> {
+            loaded.add(missed);
+            return Map.of(2L, TRANSACTIONS);
+        });
+        // THEN a customer without transactions gets an empty list
+        assertEquals(List.of(Set.of(2L, 3L)), loaded);
+        assertEquals(Map.of(CUST_ID, TRANSACTIONS, 2L, TRANSACTIONS, 3L, List.of()), transactions);
+    }
+
+    @Test
+    public void given_disabledCache_when_get_then_alwaysLoad() {
+        // GIVEN
+        cache = new CustomerTransactionCache(meterRegistry, false, 100, 2, Duration.ofMinutes(1), Duration.ZERO);
+        // WHEN
+        cache.get(CUST_ID, QUERY, loader);
+        cache.get(CUST_ID, QUERY, loader);
+        // THEN
+        assertEquals(2, loads.get());
+    }
+}
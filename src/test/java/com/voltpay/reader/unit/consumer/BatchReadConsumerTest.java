@@ -0,0 +1,339 @@
+package com.voltpay.reader.unit.consumer;
+
+import com.voltpay.reader.cache.CustomerTransactionCache;
+import com.voltpay.reader.consumer.BatchReadConsumer;
+import com.voltpay.reader.consumer.WriteConcurrencyController;
+import com.voltpay.reader.entities.Idempotency;
+import com.voltpay.reader.entities.Transaction;
+import com.voltpay.reader.idempotency.IdempotencyFilter;
+import com.voltpay.reader.metrics.ConsumerMetrics;
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.repositories.BulkIngestRepository;
+import com.voltpay.reader.repositories.BulkMergeResult;
+import com.voltpay.reader.repositories.IdempotencyRepository;
+import com.voltpay.reader.repositories.TransactionKey;
+import com.voltpay.reader.repositories.TransactionRepository;
+import com.voltpay.reader.repositories.WriteOutcome;
+import com.voltpay.reader.utils.Currency;
+import com.voltpay.reader.utils.TrnStatus;
+import com.voltpay.reader.utils.TrnType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class BatchReadConsumerTest {
+
+    private static final BigDecimal AMOUNT = BigDecimal.TEN;
+    private static final LocalDateTime CREATED_AT = LocalDateTime.now();
+    private static final LocalDateTime UPDATED_AT = CREATED_AT.plusHours(1);
+    private static final String COMMENT = "comment";
+    private static final Integer VERSION = 100;
+    private static final String CURRENCY = Currency.EUR.toString();
+    private static final Long CUST_ID = 1L;
+    private static final Integer STATUS = TrnStatus.SUCCESS.getValue();
+    private static final String TYPE = TrnType.BWI.toString();
+    private static final int PARTITION = 3;
+
+    private BatchReadConsumer consumer;
+
+    private TransactionRepository transactionRepository;
+
+    private IdempotencyRepository idempotencyRepository;
+
+    private BulkIngestRepository bulkIngestRepository;
+
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private IdempotencyFilter idempotencyFilter;
+
+    private CustomerTransactionCache customerTransactionCache;
+
+    @BeforeEach
+    void setUp() {
+        transactionRepository = mock(TransactionRepository.class);
+        when(transactionRepository.upsertAll(anyList())).thenAnswer(invocation -> keys(invocation.getArgument(0)));
+        idempotencyRepository = mock(IdempotencyRepository.class);
+        bulkIngestRepository = mock(BulkIngestRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        meterRegistry = new SimpleMeterRegistry();
+        idempotencyFilter = mock(IdempotencyFilter.class);
+        when(idempotencyFilter.check(anyInt(), any())).thenReturn(IdempotencyFilter.Verdict.NEW);
+        customerTransactionCache = mock(CustomerTransactionCache.class);
+        consumer = consumer("batch");
+    }
+
+    @Test
+    public void given_onlyInvalidEvents_when_processMessages_then_disregardBatch() {
+        // GIVEN
+        List<ReadEvent> events = List.of(ReadEvent.builder().build(), ReadEvent.builder().messageId("msg").build());
+        // WHEN
+        consumer.processMessages(records(events));
+        // THEN
+        verifyNoInteractions(idempotencyRepository);
+        verifyNoInteractions(transactionRepository);
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    public void given_validEvents_when_processMessages_then_persistInOneTransaction() {
+        // GIVEN
+        List<ReadEvent> events = List.of(buildReadEvent("msg1", "id1"), ReadEvent.builder().build(),
+            buildReadEvent("msg2", "id2"), buildReadEvent("msg1", "id1"));
+        // WHEN
+        consumer.processMessages(records(events));
+        // THEN only valid events which are not repeated in the batch are persisted
+        ArgumentCaptor<List<Idempotency>> idempotencyCaptor = ArgumentCaptor.forClass(List.class);
+        verify(idempotencyRepository).insertAll(idempotencyCaptor.capture());
+        assertEquals(List.of("msg1", "msg2"), idempotencyCaptor.getValue().stream().map(Idempotency::getId).toList());
+        assertEquals(List.of(PARTITION, PARTITION), idempotencyCaptor.getValue().stream().map(Idempotency::getKafkaPartition).toList());
+
+        ArgumentCaptor<List<Transaction>> transactionCaptor = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).upsertAll(transactionCaptor.capture());
+        assertEquals(List.of("id1", "id2"), transactionCaptor.getValue().stream().map(Transaction::getId).toList());
+
+        verify(transactionManager, times(1)).commit(any());
+        verify(transactionManager, never()).rollback(any());
+        verify(idempotencyFilter).add(PARTITION, "msg1");
+        verify(idempotencyFilter).add(PARTITION, "msg2");
+        // every id was new according to the filter, no need to check them in the database
+        verify(idempotencyRepository, never()).findExistingIds(any());
+        verify(customerTransactionCache, times(1)).invalidate(CUST_ID);
+    }
+
+    @Test
+    public void given_severalVersionsOfTransaction_when_processMessages_then_writeHighestVersionOnly() {
+        // GIVEN
+        ReadEvent pending = buildReadEvent("msg1", "id1");
+        ReadEvent other = buildReadEvent("msg2", "id2");
+        ReadEvent success = buildReadEvent("msg3", "id1");
+        success.setVersion(VERSION + 1);
+        success.setStatus(TrnStatus.SUCCESS.getValue());
+        ReadEvent outOfOrder = buildReadEvent("msg4", "id1");
+        List<ReadEvent> events = List.of(pending, other, success, outOfOrder);
+        // WHEN
+        consumer.processMessages(records(events));
+        // THEN every message is recorded, but only the highest version of id1 is written
+        ArgumentCaptor<List<Idempotency>> idempotencyCaptor = ArgumentCaptor.forClass(List.class);
+        verify(idempotencyRepository).insertAll(idempotencyCaptor.capture());
+        assertEquals(List.of("msg1", "msg2", "msg3", "msg4"), idempotencyCaptor.getValue().stream().map(Idempotency::getId).toList());
+
+        ArgumentCaptor<List<Transaction>> transactionCaptor = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).upsertAll(transactionCaptor.capture());
+        assertEquals(List.of("id1", "id2"), transactionCaptor.getValue().stream().map(Transaction::getId).toList());
+        assertEquals(VERSION + 1, transactionCaptor.getValue().get(0).getVersion());
+        assertEquals(2, meterRegistry.counter("reader.events.coalesced").count());
+    }
+
+    @Test
+    public void given_staleTransaction_when_processMessages_then_countStaleAndSkipItsCustomer() {
+        // GIVEN
+        ReadEvent stale = buildReadEvent("msg1", "id1");
+        ReadEvent event = buildReadEvent("msg2", "id2");
+        event.setCustId(CUST_ID + 1);
+        // in the past, so that the end to end latency is recorded
+        stale.setUpdatedAt(CREATED_AT);
+        event.setUpdatedAt(CREATED_AT);
+        List<ReadEvent> events = List.of(stale, event);
+        when(transactionRepository.upsertAll(anyList())).thenAnswer(invocation -> {
+            List<Transaction> transactions = invocation.getArgument(0);
+            return keys(transactions.subList(1, transactions.size()));
+        });
+        // WHEN
+        consumer.processMessages(records(events));
+        // THEN both messages are recorded, but only the written transaction reaches the metrics and the cache
+        verify(idempotencyFilter).add(PARTITION, "msg1");
+        verify(idempotencyFilter).add(PARTITION, "msg2");
+        assertEquals(1, meterRegistry.counter("reader.events.stale").count());
+        assertEquals(1, meterRegistry.timer("reader.events.end.to.end").count());
+        verify(customerTransactionCache, never()).invalidate(CUST_ID);
+        verify(customerTransactionCache).invalidate(CUST_ID + 1);
+    }
+
+    @Test
+    public void given_replayedBatch_when_processMessages_then_skipProcessedWithoutRollback() {
+        // GIVEN
+        ReadEvent recent = buildReadEvent("msg1", "id1");
+        ReadEvent older = buildReadEvent("msg2", "id2");
+        ReadEvent event = buildReadEvent("msg3", "id3");
+        List<ReadEvent> events = List.of(recent, older, event);
+        when(idempotencyFilter.check(PARTITION, "msg1")).thenReturn(IdempotencyFilter.Verdict.DUPLICATE);
+        when(idempotencyFilter.check(PARTITION, "msg2")).thenReturn(IdempotencyFilter.Verdict.UNKNOWN);
+        when(idempotencyRepository.findExistingIds(Set.of("msg2"))).thenReturn(List.of("msg2"));
+        // WHEN
+        consumer.processMessages(records(events));
+        // THEN
+        ArgumentCaptor<List<Transaction>> transactionCaptor = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).upsertAll(transactionCaptor.capture());
+        assertEquals(List.of("id3"), transactionCaptor.getValue().stream().map(Transaction::getId).toList());
+        verify(transactionManager, never()).rollback(any());
+        assertEquals(2, meterRegistry.counter("reader.events.duplicate").count());
+    }
+
+    @Test
+    public void given_duplicateInBatch_when_processMessages_then_skipDuplicateOneByOne() {
+        // GIVEN
+        ReadEvent duplicate = buildReadEvent("msg1", "id1");
+        ReadEvent event = buildReadEvent("msg2", "id2");
+        doThrow(DataIntegrityViolationException.class).when(idempotencyRepository).insertAll(anyList());
+        when(transactionRepository.upsertIfNewMessage(argThat(i -> i != null && duplicate.getMessageId().equals(i.getId())), any()))
+            .thenReturn(WriteOutcome.DUPLICATE);
+        when(transactionRepository.upsertIfNewMessage(argThat(i -> i != null && event.getMessageId().equals(i.getId())), any()))
+            .thenReturn(WriteOutcome.WRITTEN);
+        // WHEN
+        consumer.processMessages(records(List.of(duplicate, event)));
+        // THEN only the batch is rolled back, the duplicate and the event are written one by one
+        verify(transactionManager, times(1)).rollback(any());
+        verify(transactionManager, times(2)).commit(any());
+        assertEquals(1, meterRegistry.counter("reader.events.duplicate").count());
+    }
+
+    @Test
+    public void given_badRecord_when_processMessages_then_reportFailedIndex() {
+        // GIVEN
+        ReadEvent event = buildReadEvent("msg1", "id1");
+        ReadEvent bad = buildReadEvent("msg2", "id2");
+        doThrow(RuntimeException.class).when(transactionRepository).upsertAll(anyList());
+        when(transactionRepository.upsertIfNewMessage(any(), any())).thenAnswer(invocation -> {
+            Transaction trn = invocation.getArgument(1);
+            if (bad.getId().equals(trn.getId())) {
+                throw new RuntimeException();
+            }
+            return WriteOutcome.WRITTEN;
+        });
+        // WHEN
+        BatchListenerFailedException ex = assertThrows(BatchListenerFailedException.class,
+            () -> consumer.processMessages(records(List.of(ReadEvent.builder().build(), event, bad))));
+        // THEN index is relative to the whole poll, including invalid events
+        assertEquals(2, ex.getIndex());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    public void given_malformedRecordAmongValid_when_processMessages_then_persistPrecedingAndReportOnlyIt() {
+        // GIVEN
+        List<ConsumerRecord<String, ReadEvent>> records = new ArrayList<>(records(List.of(buildReadEvent("msg1", "id1"))));
+        records.add(undeserializable(1));
+        records.add(new ConsumerRecord<>("read-topic", PARTITION, 2, String.valueOf(CUST_ID), buildReadEvent("msg3", "id3")));
+        // WHEN
+        BatchListenerFailedException ex = assertThrows(BatchListenerFailedException.class, () -> consumer.processMessages(records));
+        // THEN the records before it are committed with the batch, it alone goes to the DLT, the ones after it are consumed again
+        assertEquals(1, ex.getIndex());
+        assertInstanceOf(DeserializationException.class, ex.getCause());
+        ArgumentCaptor<List<Transaction>> transactionCaptor = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).upsertAll(transactionCaptor.capture());
+        assertEquals(List.of("id1"), transactionCaptor.getValue().stream().map(Transaction::getId).toList());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    public void given_bulkMode_when_processMessages_then_copyAndMergeInOneTransaction() {
+        // GIVEN
+        consumer = consumer("bulk");
+        ReadEvent replayed = buildReadEvent("msg1", "id1");
+        ReadEvent event = buildReadEvent("msg2", "id2");
+        ReadEvent stale = buildReadEvent("msg3", "id3");
+        // in the past, so that the end to end latency is recorded
+        List.of(replayed, event, stale).forEach(e -> e.setUpdatedAt(CREATED_AT));
+        List<ReadEvent> events = List.of(replayed, event, stale);
+        when(idempotencyFilter.check(PARTITION, "msg1")).thenReturn(IdempotencyFilter.Verdict.UNKNOWN);
+        when(bulkIngestRepository.copyAndMerge(anyList(), anyMap()))
+            .thenReturn(new BulkMergeResult(Set.of("msg2", "msg3"), Set.of(new TransactionKey("id2", CREATED_AT))));
+        // WHEN
+        consumer.processMessages(records(events));
+        // THEN the merge skips the processed message, it isn't looked up beforehand
+        ArgumentCaptor<List<Idempotency>> idempotencyCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Map<String, Transaction>> transactionCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(bulkIngestRepository).copyAndMerge(idempotencyCaptor.capture(), transactionCaptor.capture());
+        assertEquals(List.of("msg1", "msg2", "msg3"), idempotencyCaptor.getValue().stream().map(Idempotency::getId).toList());
+        // each transaction with the message it came with, so the merge can skip those of processed messages
+        assertEquals(List.of("msg1", "msg2", "msg3"), List.copyOf(transactionCaptor.getValue().keySet()));
+        assertEquals(List.of("id1", "id2", "id3"), transactionCaptor.getValue().values().stream().map(Transaction::getId).toList());
+        verify(idempotencyRepository, never()).findExistingIds(any());
+        verify(idempotencyRepository, never()).insertAll(anyList());
+        verify(transactionRepository, never()).upsertAll(anyList());
+        verify(transactionManager, times(1)).commit(any());
+        assertEquals(1, meterRegistry.counter("reader.events.duplicate").count());
+        assertEquals(1, meterRegistry.counter("reader.events.stale").count());
+        // only the transaction the merge wrote has reached the reader
+        assertEquals(1, meterRegistry.timer("reader.events.end.to.end").count());
+        assertEquals(3, meterRegistry.counter("reader.bulk.events").count());
+        assertEquals(1, meterRegistry.timer("reader.bulk.duration").count());
+    }
+
+    private BatchReadConsumer consumer(String mode) {
+        return new BatchReadConsumer(transactionRepository, idempotencyRepository, bulkIngestRepository, transactionManager,
+            new ConsumerMetrics(meterRegistry), idempotencyFilter, customerTransactionCache, mock(WriteConcurrencyController.class), mode);
+    }
+
+    private static Set<TransactionKey> keys(List<Transaction> transactions) {
+        return transactions.stream().map(trn -> new TransactionKey(trn.getId(), trn.getCreatedAt())).collect(Collectors.toSet());
+    }
+
+    private static List<ConsumerRecord<String, ReadEvent>> records(List<ReadEvent> events) {
+        List<ConsumerRecord<String, ReadEvent>> records = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            records.add(new ConsumerRecord<>("read-topic", PARTITION, i, String.valueOf(CUST_ID), events.get(i)));
+        }
+        return records;
+    }
+
+    /**
+     * What the ErrorHandlingDeserializer hands over for a record it couldn't deserialize.
+     */
+    private static ConsumerRecord<String, ReadEvent> undeserializable(long offset) {
+        ConsumerRecord<String, ReadEvent> consumerRecord = new ConsumerRecord<>("read-topic", PARTITION, offset, String.valueOf(CUST_ID), null);
+        SerializationUtils.deserializationException(consumerRecord.headers(), new byte[] {'{'}, new RuntimeException("malformed"), false);
+        return consumerRecord;
+    }
+
+    private ReadEvent buildReadEvent(String messageId, String id) {
+        return ReadEvent.builder()
+            .messageId(messageId)
+            .id(id)
+            .amount(AMOUNT)
+            .createdAt(CREATED_AT)
+            .currency(CURRENCY)
+            .custId(CUST_ID)
+            .status(STATUS)
+            .type(TYPE)
+            .updatedAt(UPDATED_AT)
+            .comment(COMMENT)
+            .version(VERSION)
+            .build();
+    }
+}
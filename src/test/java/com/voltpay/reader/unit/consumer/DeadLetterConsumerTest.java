@@ -1,11 +1,18 @@
 package com.voltpay.reader.unit.consumer;
 
 import com.voltpay.reader.consumer.DeadLetterConsumer;
+import com.voltpay.reader.metrics.ConsumerMetrics;
 import com.voltpay.reader.pojo.ReadEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -15,14 +22,19 @@ class DeadLetterConsumerTest {
 
     private static final Long CUST_ID = 1L;
 
+    private static final long SEND_TIMEOUT_MS = 50;
+
     private DeadLetterConsumer consumer;
 
     private KafkaTemplate<String, ReadEvent> kafkaTemplate;
 
+    private SimpleMeterRegistry meterRegistry;
+
     @BeforeEach
     void setUp() {
         kafkaTemplate = mock(KafkaTemplate.class);
-        consumer = new DeadLetterConsumer(kafkaTemplate);
+        meterRegistry = new SimpleMeterRegistry();
+        consumer = new DeadLetterConsumer(kafkaTemplate, new ConsumerMetrics(meterRegistry), SEND_TIMEOUT_MS);
     }
 
     @Test
@@ -30,10 +42,40 @@ class DeadLetterConsumerTest {
         // GIVEN
         ReadEvent readEvent = new ReadEvent();
         readEvent.setCustId(CUST_ID);
+        when(kafkaTemplate.send("read-topic", readEvent.getCustId().toString(), readEvent))
+            .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
         // WHEN
         consumer.reprocessMessages(readEvent);
         // THEN
         verify(kafkaTemplate).send("read-topic", readEvent.getCustId().toString(), readEvent);
+        assertEquals(1, meterRegistry.counter("reader.dlt.republished").count());
+        assertEquals(0, meterRegistry.counter("reader.dlt.republish.failures").count());
+    }
+
+    @Test
+    public void given_failedSend_when_reprocessMessages_then_countFailureAndThrow() {
+        // GIVEN
+        ReadEvent readEvent = new ReadEvent();
+        readEvent.setCustId(CUST_ID);
+        when(kafkaTemplate.send("read-topic", readEvent.getCustId().toString(), readEvent))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker unavailable")));
+        // WHEN
+        // THEN thrown to the error handler, so the DLT offset isn't committed
+        assertThrows(KafkaException.class, () -> consumer.reprocessMessages(readEvent));
+        assertEquals(0, meterRegistry.counter("reader.dlt.republished").count());
+        assertEquals(1, meterRegistry.counter("reader.dlt.republish.failures").count());
+    }
+
+    @Test
+    public void given_unacknowledgedSend_when_reprocessMessages_then_throwAfterTimeout() {
+        // GIVEN
+        ReadEvent readEvent = new ReadEvent();
+        readEvent.setCustId(CUST_ID);
+        when(kafkaTemplate.send("read-topic", readEvent.getCustId().toString(), readEvent)).thenReturn(new CompletableFuture<>());
+        // WHEN
+        // THEN
+        assertThrows(KafkaException.class, () -> consumer.reprocessMessages(readEvent));
+        assertEquals(1, meterRegistry.counter("reader.dlt.republish.failures").count());
     }
 
     @Test
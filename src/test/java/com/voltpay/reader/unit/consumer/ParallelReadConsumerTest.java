@@ -0,0 +1,186 @@
+package com.voltpay.reader.unit.consumer;
+
+import com.voltpay.reader.cache.CustomerTransactionCache;
+import com.voltpay.reader.consumer.ParallelReadConsumer;
+import com.voltpay.reader.entities.Transaction;
+import com.voltpay.reader.idempotency.IdempotencyFilter;
+import com.voltpay.reader.metrics.ConsumerMetrics;
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.repositories.TransactionRepository;
+import com.voltpay.reader.repositories.WriteOutcome;
+import com.voltpay.reader.utils.Currency;
+import com.voltpay.reader.utils.TrnStatus;
+import com.voltpay.reader.utils.TrnType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ParallelReadConsumerTest {
+
+    private static final BigDecimal AMOUNT = BigDecimal.TEN;
+    private static final LocalDateTime CREATED_AT = LocalDateTime.now();
+    private static final LocalDateTime UPDATED_AT = CREATED_AT.plusHours(1);
+    private static final String COMMENT = "comment";
+    private static final Integer VERSION = 100;
+    private static final String CURRENCY = Currency.EUR.toString();
+    private static final Integer STATUS = TrnStatus.SUCCESS.getValue();
+    private static final String TYPE = TrnType.BWI.toString();
+    private static final int PARTITION = 3;
+
+    private ParallelReadConsumer consumer;
+
+    private TransactionRepository transactionRepository;
+
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private IdempotencyFilter idempotencyFilter;
+
+    private CustomerTransactionCache customerTransactionCache;
+
+    private ConsumerRecordRecoverer deadLetterRecoverer;
+
+    private MessageListenerContainer container;
+
+    @BeforeEach
+    void setUp() {
+        transactionRepository = mock(TransactionRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        meterRegistry = new SimpleMeterRegistry();
+        idempotencyFilter = mock(IdempotencyFilter.class);
+        when(idempotencyFilter.check(anyInt(), any())).thenReturn(IdempotencyFilter.Verdict.NEW);
+        customerTransactionCache = mock(CustomerTransactionCache.class);
+        deadLetterRecoverer = mock(ConsumerRecordRecoverer.class);
+        container = mock(MessageListenerContainer.class);
+        when(container.isRunning()).thenReturn(true);
+        KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+        when(registry.getListenerContainer(anyString())).thenReturn(container);
+        consumer = new ParallelReadConsumer(transactionRepository, transactionManager, new ConsumerMetrics(meterRegistry), idempotencyFilter,
+            customerTransactionCache, deadLetterRecoverer, registry, 4, 0, 2);
+    }
+
+    @Test
+    public void given_eventsOfSeveralCustomers_when_processMessage_then_persistInOrderPerCustomerAndAcknowledge() throws Exception {
+        // GIVEN
+        List<String> persisted = new CopyOnWriteArrayList<>();
+        when(transactionRepository.upsertIfNewMessage(any(), any())).thenAnswer(invocation -> {
+            Transaction trn = invocation.getArgument(1);
+            persisted.add(trn.getCustId() + ":" + trn.getId());
+            return WriteOutcome.WRITTEN;
+        });
+        List<Acknowledgment> acknowledgments = List.of(mock(Acknowledgment.class), mock(Acknowledgment.class), mock(Acknowledgment.class),
+            mock(Acknowledgment.class));
+        // WHEN
+        consumer.processMessage(consumerRecord(0, buildReadEvent("msg1", "id1", 1L)), acknowledgments.get(0));
+        consumer.processMessage(consumerRecord(1, buildReadEvent("msg2", "id2", 2L)), acknowledgments.get(1));
+        consumer.processMessage(consumerRecord(2, buildReadEvent("msg3", "id3", 1L)), acknowledgments.get(2));
+        consumer.processMessage(consumerRecord(3, buildReadEvent("msg4", "id4", 2L)), acknowledgments.get(3));
+        consumer.shutdown();
+        // THEN the lanes interleave, but each customer's events are persisted in the order of the partition
+        assertEquals(List.of("1:id1", "1:id3"), persisted.stream().filter(trn -> trn.startsWith("1:")).toList());
+        assertEquals(List.of("2:id2", "2:id4"), persisted.stream().filter(trn -> trn.startsWith("2:")).toList());
+        acknowledgments.forEach(acknowledgment -> verify(acknowledgment).acknowledge());
+        verify(transactionManager, times(4)).commit(any());
+        verify(idempotencyFilter).add(PARTITION, "msg4");
+    }
+
+    @Test
+    public void given_invalidOrRecentlyProcessedEvent_when_processMessage_then_acknowledgeWithoutPersisting() throws Exception {
+        // GIVEN
+        ReadEvent recent = buildReadEvent("msg1", "id1", 1L);
+        when(idempotencyFilter.check(PARTITION, "msg1")).thenReturn(IdempotencyFilter.Verdict.DUPLICATE);
+        Acknowledgment invalidAck = mock(Acknowledgment.class);
+        Acknowledgment recentAck = mock(Acknowledgment.class);
+        // WHEN
+        consumer.processMessage(consumerRecord(0, ReadEvent.builder().messageId("msg0").build()), invalidAck);
+        consumer.processMessage(consumerRecord(1, recent), recentAck);
+        consumer.shutdown();
+        // THEN
+        verify(invalidAck).acknowledge();
+        verify(recentAck).acknowledge();
+        verifyNoInteractions(transactionRepository);
+        verifyNoInteractions(transactionManager);
+        assertEquals(1, meterRegistry.counter("reader.events.duplicate").count());
+    }
+
+    @Test
+    public void given_failingEvent_when_processMessage_then_retryOncePublishToDltAndAcknowledge() throws Exception {
+        // GIVEN
+        when(transactionRepository.upsertIfNewMessage(any(), any())).thenThrow(new RuntimeException());
+        ConsumerRecord<String, ReadEvent> consumerRecord = consumerRecord(0, buildReadEvent("msg1", "id1", 1L));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+        // WHEN
+        consumer.processMessage(consumerRecord, acknowledgment);
+        consumer.shutdown();
+        // THEN
+        verify(transactionRepository, times(2)).upsertIfNewMessage(any(), any());
+        verify(transactionManager, times(2)).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verify(deadLetterRecoverer).accept(eq(consumerRecord), any(RuntimeException.class));
+        verify(acknowledgment).acknowledge();
+        verify(container, never()).stop();
+    }
+
+    @Test
+    public void given_deadLetterUnavailable_when_processMessage_then_retryPublishAndStopContainer() throws Exception {
+        // GIVEN
+        when(transactionRepository.upsertIfNewMessage(any(), any())).thenThrow(new RuntimeException());
+        doThrow(new RuntimeException("DLT unavailable")).when(deadLetterRecoverer).accept(any(), any());
+        ConsumerRecord<String, ReadEvent> consumerRecord = consumerRecord(0, buildReadEvent("msg1", "id1", 1L));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+        // WHEN
+        consumer.processMessage(consumerRecord, acknowledgment);
+        consumer.shutdown();
+        // THEN the record isn't acknowledged, the listener stops instead of waiting for it forever
+        verify(deadLetterRecoverer, times(2)).accept(eq(consumerRecord), any(RuntimeException.class));
+        verify(acknowledgment, never()).acknowledge();
+        verify(container).stop();
+    }
+
+    private static ConsumerRecord<String, ReadEvent> consumerRecord(long offset, ReadEvent event) {
+        return new ConsumerRecord<>("read-topic", PARTITION, offset, String.valueOf(event.getCustId()), event);
+    }
+
+    private ReadEvent buildReadEvent(String messageId, String id, Long custId) {
+        return ReadEvent.builder()
+            .messageId(messageId)
+            .id(id)
+            .amount(AMOUNT)
+            .createdAt(CREATED_AT)
+            .currency(CURRENCY)
+            .custId(custId)
+            .status(STATUS)
+            .type(TYPE)
+            .updatedAt(UPDATED_AT)
+            .comment(COMMENT)
+            .version(VERSION)
+            .build();
+    }
+}
@@ -1,13 +1,22 @@
 package com.voltpay.reader.unit.consumer;
 
+import com.voltpay.reader.cache.CustomerTransactionCache;
 import com.voltpay.reader.consumer.ReadConsumer;
+import com.voltpay.reader.consumer.WriteConcurrencyController;
+import com.voltpay.reader.entities.Idempotency;
 import com.voltpay.reader.entities.Transaction;
+import com.voltpay.reader.idempotency.IdempotencyFilter;
+import com.voltpay.reader.metrics.ConsumerMetrics;
+import com.voltpay.reader.metrics.Stage;
 import com.voltpay.reader.pojo.ReadEvent;
-import com.voltpay.reader.repositories.IdempotencyRepository;
 import com.voltpay.reader.repositories.TransactionRepository;
+import com.voltpay.reader.repositories.WriteOutcome;
 import com.voltpay.reader.utils.Currency;
 import com.voltpay.reader.utils.TrnStatus;
 import com.voltpay.reader.utils.TrnType;
+import com.voltpay.reader.validation.Rejection;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -20,12 +29,17 @@ import org.springframework.transaction.support.SimpleTransactionStatus;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -43,58 +57,82 @@ class ReadConsumerTest {
     private static final Long CUST_ID = 1L;
     private static final Integer STATUS = TrnStatus.SUCCESS.getValue();
     private static final String TYPE = TrnType.BWI.toString();
+    private static final int PARTITION = 3;
 
     private ReadConsumer readConsumer;
 
     private TransactionRepository transactionRepository;
 
-    private IdempotencyRepository idempotencyRepository;
-
     private PlatformTransactionManager transactionManager;
 
+    private SimpleMeterRegistry meterRegistry;
+
+    private IdempotencyFilter idempotencyFilter;
+
+    private CustomerTransactionCache customerTransactionCache;
+
     @BeforeEach
     void setUp() {
         transactionRepository = mock(TransactionRepository.class);
-        idempotencyRepository = mock(IdempotencyRepository.class);
         transactionManager = mock(PlatformTransactionManager.class);
-        readConsumer = new ReadConsumer(transactionRepository, idempotencyRepository, transactionManager);
+        meterRegistry = new SimpleMeterRegistry();
+        idempotencyFilter = mock(IdempotencyFilter.class);
+        when(idempotencyFilter.check(anyInt(), any())).thenReturn(IdempotencyFilter.Verdict.UNKNOWN);
+        customerTransactionCache = mock(CustomerTransactionCache.class);
+        readConsumer = new ReadConsumer(transactionRepository, transactionManager, new ConsumerMetrics(meterRegistry), idempotencyFilter,
+            customerTransactionCache, mock(WriteConcurrencyController.class));
     }
 
     @Test
     public void given_nullEvent_when_processMessage_then_disregardEvent() {
         // GIVEN
         // WHEN
-        readConsumer.processMessage(null);
+        readConsumer.processMessage(null, PARTITION);
         // THEN
-        verifyNoInteractions(idempotencyRepository);
         verifyNoInteractions(transactionRepository);
         verifyNoInteractions(transactionManager);
     }
 
     @ParameterizedTest
     @MethodSource("invalidEvents")
-    public void given_eventNoValid_when_processMessage_then_disregardEvent(ReadEvent event) {
+    public void given_eventNoValid_when_processMessage_then_disregardEvent(ReadEvent event, Rejection rejection) {
         // GIVEN
         // WHEN
-        readConsumer.processMessage(event);
+        readConsumer.processMessage(event, PARTITION);
         // THEN
-        verifyNoInteractions(idempotencyRepository);
         verifyNoInteractions(transactionRepository);
         verifyNoInteractions(transactionManager);
+        assertEquals(1, meterRegistry.counter("reader.events.invalid", "reason", rejection.tag()).count());
     }
 
     @Test
-    public void given_exceptionOnIdempotency_when_processMessage_then_dontPersist() {
+    public void given_exceptionOnInsert_when_processMessage_then_rollback() {
         // GIVEN
         ReadEvent event = buildReadEvent();
         TransactionStatus status = new SimpleTransactionStatus();
         when(transactionManager.getTransaction(any())).thenReturn(status);
-        doThrow(RuntimeException.class).when(idempotencyRepository).insertNew(event.getMessageId(), event.getCreatedAt().toLocalDate());
+        doThrow(RuntimeException.class).when(transactionRepository).upsertIfNewMessage(any(), any());
         // WHEN
-        readConsumer.processMessage(event);
+        readConsumer.processMessage(event, PARTITION);
         // THEN
-        verifyNoInteractions(transactionRepository);
         verify(transactionManager).rollback(status);
+        assertEquals(1, meterRegistry.counter("reader.events.failed").count());
+    }
+
+    @Test
+    public void given_duplicateMessage_when_processMessage_then_countAndSkip() {
+        // GIVEN
+        ReadEvent event = buildReadEvent();
+        TransactionStatus status = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+        when(transactionRepository.upsertIfNewMessage(any(), any())).thenReturn(WriteOutcome.DUPLICATE);
+        // WHEN
+        readConsumer.processMessage(event, PARTITION);
+        // THEN nothing to roll back, the duplicate didn't write anything
+        verify(transactionManager).commit(status);
+        verify(transactionManager, never()).rollback(any());
+        assertEquals(1, meterRegistry.counter("reader.events.duplicate").count());
+        verifyNoInteractions(customerTransactionCache);
     }
 
     @Test
@@ -102,14 +140,18 @@ class ReadConsumerTest {
         // GIVEN
         TransactionStatus status = new SimpleTransactionStatus();
         when(transactionManager.getTransaction(any())).thenReturn(status);
+        when(transactionRepository.upsertIfNewMessage(any(), any())).thenReturn(WriteOutcome.WRITTEN);
         ReadEvent event = buildReadEvent();
         // WHEN
-        readConsumer.processMessage(event);
+        readConsumer.processMessage(event, PARTITION);
         // THEN
-        verify(idempotencyRepository).insertNew(event.getMessageId(), event.getCreatedAt().toLocalDate());
-
         ArgumentCaptor<Transaction> captor = ArgumentCaptor.forClass(Transaction.class);
-        verify(transactionRepository).save(captor.capture());
+        ArgumentCaptor<Idempotency> idempotencyCaptor = ArgumentCaptor.forClass(Idempotency.class);
+        verify(transactionRepository).upsertIfNewMessage(idempotencyCaptor.capture(), captor.capture());
+        assertEquals(event.getMessageId(), idempotencyCaptor.getValue().getId());
+        assertEquals(event.getCreatedAt().toLocalDate(), idempotencyCaptor.getValue().getDate());
+        assertEquals(PARTITION, idempotencyCaptor.getValue().getKafkaPartition());
+        verify(transactionRepository, never()).save(any());
         Transaction trn = captor.getValue();
 
         assertEquals(event.getId(), trn.getId());
@@ -124,49 +166,112 @@ class ReadConsumerTest {
         assertEquals(event.getVersion(), trn.getVersion());
 
         verify(transactionManager).commit(status);
+        verify(idempotencyFilter).add(PARTITION, event.getMessageId());
+        verify(customerTransactionCache).invalidate(CUST_ID);
+    }
+
+    @Test
+    public void given_validEvent_when_processMessage_then_timeEveryStageAndEndToEnd() {
+        // GIVEN
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(transactionRepository.upsertIfNewMessage(any(), any())).thenReturn(WriteOutcome.WRITTEN);
+        ReadEvent event = buildReadEvent();
+        event.setUpdatedAt(LocalDateTime.now().minusSeconds(5));
+        // WHEN
+        readConsumer.processMessage(event, PARTITION);
+        // THEN deserialization is timed by the deserializer, before the listener
+        for (Stage stage : List.of(Stage.VALIDATE, Stage.IDEMPOTENCY_CHECK, Stage.CONNECTION, Stage.WRITE, Stage.COMMIT)) {
+            assertEquals(1, meterRegistry.timer("reader.stage.duration", "stage", stage.tag()).count());
+        }
+        assertEquals(1, meterRegistry.counter("reader.events.valid").count());
+        // measured from updatedAt, the time of this version of the transaction
+        Timer endToEnd = meterRegistry.timer("reader.events.end.to.end");
+        assertEquals(1, endToEnd.count());
+        assertTrue(endToEnd.totalTime(TimeUnit.SECONDS) >= 5);
+    }
+
+    @Test
+    public void given_recentlyProcessedMessage_when_processMessage_then_skipDatabase() {
+        // GIVEN
+        ReadEvent event = buildReadEvent();
+        when(idempotencyFilter.check(PARTITION, event.getMessageId())).thenReturn(IdempotencyFilter.Verdict.DUPLICATE);
+        // WHEN
+        readConsumer.processMessage(event, PARTITION);
+        // THEN
+        verifyNoInteractions(transactionRepository);
+        verifyNoInteractions(transactionManager);
+        assertEquals(1, meterRegistry.counter("reader.events.duplicate").count());
+    }
+
+    @Test
+    public void given_staleVersion_when_processMessage_then_countAndSkip() {
+        // GIVEN
+        TransactionStatus status = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+        when(transactionRepository.upsertIfNewMessage(any(), any())).thenReturn(WriteOutcome.STALE);
+        ReadEvent event = buildReadEvent();
+        // WHEN
+        readConsumer.processMessage(event, PARTITION);
+        // THEN the message is still recorded as processed, the persisted transaction is left as is
+        verify(transactionManager).commit(status);
+        verify(idempotencyFilter).add(PARTITION, event.getMessageId());
+        assertEquals(1, meterRegistry.counter("reader.events.stale").count());
+        assertEquals(0, meterRegistry.counter("reader.events.duplicate").count());
+        verifyNoInteractions(customerTransactionCache);
     }
 
     private static Stream<Arguments> invalidEvents() {
         return Stream.of(
             // null message id
-            Arguments.of(ReadEvent.builder().build()),
+            Arguments.of(ReadEvent.builder().build(), Rejection.MISSING_MESSAGE_ID),
 
             // null record id
-            Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).build()),
+            Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).build(), Rejection.MISSING_ID),
 
             // null amount
-            Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).build()),
+            Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).build(), Rejection.MISSING_AMOUNT),
 
             // null created at
-            Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT).build()),
+            Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT).build(), Rejection.MISSING_CREATED_AT),
 
             // null currency
             Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID)
-                .amount(AMOUNT).createdAt(CREATED_AT).build()),
+                .amount(AMOUNT).createdAt(CREATED_AT).build(), Rejection.MISSING_CURRENCY),
 
             // null customer id
             Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT)
-                .createdAt(CREATED_AT).currency(CURRENCY).build()),
+                .createdAt(CREATED_AT).currency(CURRENCY).build(), Rejection.MISSING_CUST_ID),
 
             // null status
             Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT)
-                .createdAt(CREATED_AT).currency(CURRENCY).custId(CUST_ID).build()),
+                .createdAt(CREATED_AT).currency(CURRENCY).custId(CUST_ID).build(), Rejection.MISSING_STATUS),
 
             // null type
             Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT)
-                .createdAt(CREATED_AT).currency(CURRENCY).custId(CUST_ID).status(STATUS).build()),
+                .createdAt(CREATED_AT).currency(CURRENCY).custId(CUST_ID).status(STATUS).build(), Rejection.MISSING_TYPE),
+
+            // null updated at
+            Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT)
+                .createdAt(CREATED_AT).currency(CURRENCY).custId(CUST_ID).status(STATUS).type(TYPE).build(), Rejection.MISSING_UPDATED_AT),
+
+            // null version
+            Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT).createdAt(CREATED_AT)
+                .updatedAt(UPDATED_AT).currency(CURRENCY).custId(CUST_ID).status(STATUS).type(TYPE).build(), Rejection.MISSING_VERSION),
 
             // invalid currency
             Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT)
-                .createdAt(CREATED_AT).currency("ABC").custId(CUST_ID).status(STATUS).type(TYPE).build()),
+                .createdAt(CREATED_AT).updatedAt(UPDATED_AT).version(VERSION).currency("ABC").custId(CUST_ID).status(STATUS).type(TYPE).build(),
+                Rejection.UNKNOWN_CURRENCY),
 
             // invalid status
             Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT)
-                .createdAt(CREATED_AT).currency(CURRENCY).custId(CUST_ID).status(-10).type(TYPE).build()),
+                .createdAt(CREATED_AT).updatedAt(UPDATED_AT).version(VERSION).currency(CURRENCY).custId(CUST_ID).status(-10).type(TYPE).build(),
+                Rejection.UNKNOWN_STATUS),
 
             // invalid type
             Arguments.of(ReadEvent.builder().messageId(MESSAGE_ID).id(RECORD_ID).amount(AMOUNT)
-                .createdAt(CREATED_AT).currency(CURRENCY).custId(CUST_ID).status(STATUS).type("DADA").build())
+                .createdAt(CREATED_AT).updatedAt(UPDATED_AT).version(VERSION).currency(CURRENCY).custId(CUST_ID).status(STATUS).type("DADA").build(),
+                Rejection.UNKNOWN_TYPE)
         );
     }
 
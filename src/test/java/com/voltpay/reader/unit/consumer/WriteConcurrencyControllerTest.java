@@ -0,0 +1,163 @@
+package com.voltpay.reader.unit.consumer;
+
+import com.voltpay.reader.consumer.WriteConcurrencyController;
+import com.voltpay.reader.pojo.ReadEvent;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class WriteConcurrencyControllerTest {
+
+    private static final int THREADS = 4;
+    private static final long SLO_MS = 100;
+
+    private KafkaListenerEndpointRegistry registry;
+
+    private HikariPoolMXBean pool;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private List<KafkaMessageListenerContainer<String, ReadEvent>> consumers;
+
+    private WriteConcurrencyController controller;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        consumers = IntStream.range(0, THREADS).mapToObj(i -> consumer()).toList();
+        ConcurrentMessageListenerContainer<String, ReadEvent> container = mock(ConcurrentMessageListenerContainer.class);
+        when(container.getContainerProperties()).thenReturn(new ContainerProperties("read-topic"));
+        when(container.getContainers()).thenReturn(consumers);
+        registry = mock(KafkaListenerEndpointRegistry.class);
+        when(registry.getListenerContainers()).thenReturn(List.of(container));
+        pool = mock(HikariPoolMXBean.class);
+        meterRegistry = new SimpleMeterRegistry();
+        controller = controller(true, "record");
+    }
+
+    @Test
+    public void given_writesAboveSlo_when_adjust_then_halveLimitAndPauseTheRest() {
+        // GIVEN
+        IntStream.range(0, 100).forEach(i -> controller.recordWrite(TimeUnit.MILLISECONDS.toNanos(i < 98 ? 10 : 500)));
+        // WHEN
+        controller.adjust();
+        // THEN
+        assertEquals(2, controller.limit());
+        assertEquals(2, meterRegistry.get("reader.consumers.limit").gauge().value());
+        verify(consumers.get(1), never()).pause();
+        verify(consumers.get(2)).pause();
+        verify(consumers.get(3)).pause();
+    }
+
+    @Test
+    public void given_healthyWritesAfterDecrease_when_adjust_then_resumeOneConsumer() {
+        // GIVEN
+        when(pool.getThreadsAwaitingConnection()).thenReturn(3);
+        controller.adjust();
+        when(pool.getThreadsAwaitingConnection()).thenReturn(0);
+        controller.recordWrite(TimeUnit.MILLISECONDS.toNanos(10));
+        // WHEN
+        controller.adjust();
+        // THEN additive increase, one consumer at a time
+        assertEquals(3, controller.limit());
+        assertEquals(3, consumers.stream().filter(consumer -> !consumer.isPauseRequested()).count());
+    }
+
+    @Test
+    public void given_limitBelowThreads_when_adjustRepeatedly_then_rotatePausedConsumers() {
+        // GIVEN
+        when(pool.getThreadsAwaitingConnection()).thenReturn(3);
+        controller.adjust();
+        when(pool.getThreadsAwaitingConnection()).thenReturn(0);
+        Set<KafkaMessageListenerContainer<String, ReadEvent>> paused = new HashSet<>();
+        Set<KafkaMessageListenerContainer<String, ReadEvent>> running = new HashSet<>();
+        // WHEN intervals without writes keep the limit
+        for (int interval = 0; interval < THREADS; interval++) {
+            controller.adjust();
+            consumers.forEach(consumer -> (consumer.isPauseRequested() ? paused : running).add(consumer));
+            assertEquals(2, consumers.stream().filter(consumer -> !consumer.isPauseRequested()).count());
+        }
+        // THEN every consumer both ran and was paused, none is starved
+        assertEquals(THREADS, paused.size());
+        assertEquals(THREADS, running.size());
+    }
+
+    @Test
+    public void given_noWrites_when_adjust_then_keepLimit() {
+        // GIVEN WHEN
+        controller.adjust();
+        // THEN
+        assertEquals(THREADS, controller.limit());
+        consumers.forEach(consumer -> verify(consumer, never()).pause());
+    }
+
+    @Test
+    public void given_disabled_when_adjust_then_leaveConsumersRunning() {
+        // GIVEN
+        controller = controller(false, "record");
+        controller.recordWrite(TimeUnit.SECONDS.toNanos(10));
+        // WHEN
+        controller.adjust();
+        // THEN
+        assertEquals(THREADS, controller.limit());
+        verifyNoInteractions(registry);
+    }
+
+    @Test
+    public void given_parallelMode_when_adjust_then_leaveConsumersRunning() {
+        // GIVEN the lanes write in parallel mode, pausing consumer threads wouldn't bound them
+        controller = controller(true, "parallel");
+        controller.recordWrite(TimeUnit.SECONDS.toNanos(10));
+        // WHEN
+        controller.adjust();
+        // THEN
+        assertEquals(THREADS, controller.limit());
+        verifyNoInteractions(registry);
+    }
+
+    private WriteConcurrencyController controller(boolean enabled, String mode) {
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        when(dataSource.getHikariPoolMXBean()).thenReturn(pool);
+        return new WriteConcurrencyController(registry, dataSource, meterRegistry, enabled, SLO_MS, 1, THREADS, 0, 0.5, mode);
+    }
+
+    /**
+     * Remembers whether it was paused, like the real container.
+     */
+    @SuppressWarnings("unchecked")
+    private static KafkaMessageListenerContainer<String, ReadEvent> consumer() {
+        KafkaMessageListenerContainer<String, ReadEvent> consumer = mock(KafkaMessageListenerContainer.class);
+        AtomicBoolean pauseRequested = new AtomicBoolean();
+        doAnswer(invocation -> {
+            pauseRequested.set(true);
+            return null;
+        }).when(consumer).pause();
+        doAnswer(invocation -> {
+            pauseRequested.set(false);
+            return null;
+        }).when(consumer).resume();
+        when(consumer.isPauseRequested()).thenAnswer(invocation -> pauseRequested.get());
+        return consumer;
+    }
+}
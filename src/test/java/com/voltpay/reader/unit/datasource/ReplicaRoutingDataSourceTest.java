@@ -0,0 +1,118 @@
+package com.voltpay.reader.unit.datasource;
+
+import com.voltpay.reader.datasource.ReplicaRoutingDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+
+    private static final long MAX_LAG_MS = 1000;
+
+    private DataSource primary;
+
+    private DataSource replica1;
+
+    private DataSource replica2;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = mock(DataSource.class);
+        when(primary.getConnection()).thenReturn(mock(Connection.class));
+        replica1 = mock(DataSource.class, RETURNS_DEEP_STUBS);
+        replica2 = mock(DataSource.class, RETURNS_DEEP_STUBS);
+        lag(replica1, 0);
+        lag(replica2, 0);
+    }
+
+    @Test
+    public void given_noReplicas_when_getConnection_then_readFromPrimary() throws SQLException {
+        // GIVEN
+        ReplicaRoutingDataSource dataSource = routing(Map.of());
+        // WHEN
+        dataSource.checkReplicaLag();
+        Connection connection = dataSource.getConnection();
+        // THEN
+        assertSame(primary.getConnection(), connection);
+    }
+
+    @Test
+    public void given_replicas_when_getConnection_then_roundRobin() throws SQLException {
+        // GIVEN
+        ReplicaRoutingDataSource dataSource = routing(replicas());
+        // WHEN
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        Connection third = dataSource.getConnection();
+        // THEN
+        assertSame(replica1.getConnection(), first);
+        assertSame(replica2.getConnection(), second);
+        assertSame(replica1.getConnection(), third);
+    }
+
+    @Test
+    public void given_laggingReplica_when_checkReplicaLag_then_skipItUntilItCatchesUp() throws SQLException {
+        // GIVEN
+        ReplicaRoutingDataSource dataSource = routing(replicas());
+        lag(replica1, MAX_LAG_MS + 1);
+        // WHEN
+        dataSource.checkReplicaLag();
+        // THEN
+        assertEquals(List.of("replica-2"), dataSource.getUpToDateReplicas());
+        assertSame(replica2.getConnection(), dataSource.getConnection());
+        assertSame(replica2.getConnection(), dataSource.getConnection());
+
+        // WHEN
+        lag(replica1, 0);
+        dataSource.checkReplicaLag();
+        // THEN
+        assertEquals(List.of("replica-1", "replica-2"), dataSource.getUpToDateReplicas());
+    }
+
+    @Test
+    public void given_noUpToDateReplica_when_checkReplicaLag_then_fallBackToPrimary() throws SQLException {
+        // GIVEN
+        ReplicaRoutingDataSource dataSource = routing(replicas());
+        lag(replica1, MAX_LAG_MS + 1);
+        when(replica2.getConnection()).thenThrow(new SQLException("replica is down"));
+        // WHEN
+        dataSource.checkReplicaLag();
+        // THEN
+        assertEquals(List.of(), dataSource.getUpToDateReplicas());
+        assertSame(primary.getConnection(), dataSource.getConnection());
+    }
+
+    private ReplicaRoutingDataSource routing(Map<String, DataSource> replicas) {
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, replicas, MAX_LAG_MS);
+        dataSource.afterPropertiesSet();
+        return dataSource;
+    }
+
+    private Map<String, DataSource> replicas() {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", replica1);
+        replicas.put("replica-2", replica2);
+        return replicas;
+    }
+
+    private static void lag(DataSource replica, long lagMs) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true);
+        when(rs.getLong(1)).thenReturn(lagMs);
+        when(replica.getConnection().createStatement().executeQuery(anyString())).thenReturn(rs);
+    }
+}
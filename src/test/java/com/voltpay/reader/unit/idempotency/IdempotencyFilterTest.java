@@ -0,0 +1,115 @@
+package com.voltpay.reader.unit.idempotency;
+
+import com.voltpay.reader.idempotency.IdempotencyFilter;
+import com.voltpay.reader.repositories.IdempotencyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class IdempotencyFilterTest {
+
+    private static final int PARTITION = 1;
+    private static final int LRU_SIZE = 2;
+    private static final int WARM_UP_LIMIT = 3;
+
+    private IdempotencyRepository idempotencyRepository;
+
+    private IdempotencyFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyRepository = mock(IdempotencyRepository.class);
+        filter = new IdempotencyFilter(idempotencyRepository, true, LRU_SIZE, 1000, 0.01, 7, WARM_UP_LIMIT);
+    }
+
+    @Test
+    public void given_notAssignedPartition_when_check_then_unknown() {
+        // GIVEN
+        // WHEN
+        filter.add(PARTITION, "msg");
+        // THEN
+        assertEquals(IdempotencyFilter.Verdict.UNKNOWN, filter.check(PARTITION, "msg"));
+    }
+
+    @Test
+    public void given_completeWarmUp_when_check_then_recentAreDuplicatesAndUnseenAreNew() {
+        // GIVEN most recent first
+        when(idempotencyRepository.findRecentIds(eq(PARTITION), any(), eq(WARM_UP_LIMIT + 1))).thenReturn(List.of("msg3", "msg2", "msg1"));
+        // WHEN
+        filter.warmUp(PARTITION);
+        // THEN
+        assertEquals(IdempotencyFilter.Verdict.DUPLICATE, filter.check(PARTITION, "msg3"));
+        assertEquals(IdempotencyFilter.Verdict.DUPLICATE, filter.check(PARTITION, "msg2"));
+        // evicted from the LRU, but still in the Bloom filter
+        assertEquals(IdempotencyFilter.Verdict.UNKNOWN, filter.check(PARTITION, "msg1"));
+        assertEquals(IdempotencyFilter.Verdict.NEW, filter.check(PARTITION, "msg4"));
+        // other partitions are not affected
+        assertEquals(IdempotencyFilter.Verdict.UNKNOWN, filter.check(PARTITION + 1, "msg4"));
+    }
+
+    @Test
+    public void given_incompleteWarmUp_when_check_then_neverNew() {
+        // GIVEN more ids than the limit
+        when(idempotencyRepository.findRecentIds(eq(PARTITION), any(), eq(WARM_UP_LIMIT + 1)))
+            .thenReturn(List.of("msg4", "msg3", "msg2", "msg1"));
+        // WHEN
+        filter.warmUp(PARTITION);
+        // THEN
+        assertEquals(IdempotencyFilter.Verdict.DUPLICATE, filter.check(PARTITION, "msg4"));
+        assertEquals(IdempotencyFilter.Verdict.UNKNOWN, filter.check(PARTITION, "msg5"));
+    }
+
+    @Test
+    public void given_processedMessages_when_check_then_noFalseNegatives() {
+        // GIVEN
+        when(idempotencyRepository.findRecentIds(anyInt(), any(), anyInt())).thenReturn(List.of());
+        filter.warmUp(PARTITION);
+        // WHEN
+        IntStream.range(0, 1000).forEach(i -> filter.add(PARTITION, "msg" + i));
+        // THEN
+        IntStream.range(0, 1000).forEach(i -> assertNotEquals(IdempotencyFilter.Verdict.NEW, filter.check(PARTITION, "msg" + i)));
+    }
+
+    @Test
+    public void given_evictedPartition_when_check_then_unknown() {
+        // GIVEN
+        when(idempotencyRepository.findRecentIds(anyInt(), any(), anyInt())).thenReturn(List.of("msg"));
+        filter.warmUp(PARTITION);
+        // WHEN
+        filter.evict(PARTITION);
+        // THEN
+        assertEquals(IdempotencyFilter.Verdict.UNKNOWN, filter.check(PARTITION, "msg"));
+    }
+
+    @Test
+    public void given_warmUpFailure_when_check_then_unknown() {
+        // GIVEN
+        when(idempotencyRepository.findRecentIds(anyInt(), any(), anyInt())).thenThrow(RuntimeException.class);
+        // WHEN
+        filter.warmUp(PARTITION);
+        // THEN
+        assertEquals(IdempotencyFilter.Verdict.UNKNOWN, filter.check(PARTITION, "msg"));
+    }
+
+    @Test
+    public void given_disabledFilter_when_warmUp_then_dontLoad() {
+        // GIVEN
+        filter = new IdempotencyFilter(idempotencyRepository, false, LRU_SIZE, 1000, 0.01, 7, WARM_UP_LIMIT);
+        // WHEN
+        filter.warmUp(PARTITION);
+        // THEN
+        verifyNoInteractions(idempotencyRepository);
+        assertEquals(IdempotencyFilter.Verdict.UNKNOWN, filter.check(PARTITION, "msg"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.voltpay.reader.unit.jobs;
+
+import com.voltpay.reader.consumer.ConsumerLagProbe;
+import com.voltpay.reader.jobs.IdempotencyCleanUpJob;
+import com.voltpay.reader.metrics.CleanUpMetrics;
+import com.voltpay.reader.pojo.IdempotencyPartition;
+import com.voltpay.reader.repositories.IdempotencyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdempotencyCleanUpJobTest {
+
+    private static final LocalDate CUT_OFF = LocalDate.now().minusWeeks(1);
+
+    private static final int CHUNK_SIZE = 100;
+
+    private static final long MAX_LAG = 1000;
+
+    private IdempotencyRepository idempotencyRepository;
+
+    private PlatformTransactionManager transactionManager;
+
+    private ConsumerLagProbe consumerLagProbe;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private IdempotencyCleanUpJob job;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyRepository = mock(IdempotencyRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        consumerLagProbe = mock(ConsumerLagProbe.class);
+        meterRegistry = new SimpleMeterRegistry();
+        job = cleanUpJob("partition");
+    }
+
+    @Test
+    public void given_oldPartitions_when_dropPartitions_then_dropEachAndReport() {
+        // GIVEN
+        IdempotencyPartition first = new IdempotencyPartition("idempotency_p1", CUT_OFF, 10);
+        IdempotencyPartition second = new IdempotencyPartition("idempotency_p2", CUT_OFF.plusDays(1), 20);
+        when(idempotencyRepository.findPartitionsEndingBy(CUT_OFF.plusDays(1))).thenReturn(List.of(first, second));
+        // WHEN
+        List<IdempotencyPartition> dropped = job.dropPartitions();
+        // THEN
+        assertEquals(List.of(first, second), dropped);
+        verify(idempotencyRepository).runPartitionMaintenance();
+        verify(idempotencyRepository).dropPartition(first);
+        verify(idempotencyRepository).dropPartition(second);
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    public void given_failedDrop_when_dropPartitions_then_continueWithNextPartition() {
+        // GIVEN
+        IdempotencyPartition first = new IdempotencyPartition("idempotency_p1", CUT_OFF, 10);
+        IdempotencyPartition second = new IdempotencyPartition("idempotency_p2", CUT_OFF.plusDays(1), 20);
+        when(idempotencyRepository.findPartitionsEndingBy(any())).thenReturn(List.of(first, second));
+        doThrow(RuntimeException.class).when(idempotencyRepository).runPartitionMaintenance();
+        doThrow(RuntimeException.class).when(idempotencyRepository).dropPartition(first);
+        // WHEN
+        List<IdempotencyPartition> dropped = job.dropPartitions();
+        // THEN
+        assertEquals(List.of(second), dropped);
+        verify(transactionManager).rollback(any());
+        verify(transactionManager).commit(any());
+        assertEquals(1, meterRegistry.counter("reader.idempotency.cleanup.maintenance.failures").count());
+    }
+
+    @Test
+    public void given_partitionMode_when_cleanUp_then_alsoDeleteFromDefaultPartition() {
+        // GIVEN
+        IdempotencyPartition partition = new IdempotencyPartition("idempotency_p1", CUT_OFF, 10);
+        when(idempotencyRepository.findPartitionsEndingBy(CUT_OFF.plusDays(1))).thenReturn(List.of(partition));
+        when(idempotencyRepository.deleteDefaultPartitionChunk(CUT_OFF, CHUNK_SIZE)).thenReturn(CHUNK_SIZE, 5);
+        // WHEN
+        job.cleanUp();
+        // THEN
+        verify(idempotencyRepository).dropPartition(partition);
+        verify(idempotencyRepository, times(2)).deleteDefaultPartitionChunk(CUT_OFF, CHUNK_SIZE);
+        verify(idempotencyRepository, never()).deleteChunk(any(), eq(CHUNK_SIZE));
+        assertEquals(CHUNK_SIZE + 5, meterRegistry.counter("reader.idempotency.cleanup.records").count());
+    }
+
+    @Test
+    public void given_chunkedMode_when_cleanUp_then_deleteUntilChunkIsNotFull() {
+        // GIVEN
+        job = cleanUpJob("chunked");
+        when(idempotencyRepository.deleteChunk(CUT_OFF, CHUNK_SIZE)).thenReturn(CHUNK_SIZE, CHUNK_SIZE, 3);
+        // WHEN
+        job.cleanUp();
+        // THEN every chunk is committed on its own
+        verify(idempotencyRepository, times(3)).deleteChunk(CUT_OFF, CHUNK_SIZE);
+        verify(transactionManager, times(3)).commit(any());
+        verify(idempotencyRepository, never()).dropPartition(any());
+        assertEquals(2 * CHUNK_SIZE + 3, meterRegistry.counter("reader.idempotency.cleanup.records").count());
+        assertEquals(1, meterRegistry.timer("reader.idempotency.cleanup.duration").count());
+    }
+
+    @Test
+    public void given_consumerLag_when_deleteInChunks_then_backOffUntilLagRecovers() {
+        // GIVEN
+        job = cleanUpJob("chunked");
+        when(consumerLagProbe.totalLag()).thenReturn(MAX_LAG + 1, MAX_LAG + 1, 0L);
+        when(idempotencyRepository.deleteChunk(any(), eq(CHUNK_SIZE))).thenReturn(1);
+        // WHEN
+        long deleted = job.deleteInChunks();
+        // THEN
+        assertEquals(1, deleted);
+        verify(idempotencyRepository, times(1)).deleteChunk(any(), eq(CHUNK_SIZE));
+        assertEquals(2, meterRegistry.counter("reader.idempotency.cleanup.backoffs").count());
+    }
+
+    @Test
+    public void given_failedChunk_when_deleteInChunks_then_rollbackAndStop() {
+        // GIVEN
+        job = cleanUpJob("chunked");
+        when(idempotencyRepository.deleteChunk(any(), eq(CHUNK_SIZE))).thenReturn(CHUNK_SIZE).thenThrow(RuntimeException.class);
+        // WHEN
+        long deleted = job.deleteInChunks();
+        // THEN what was committed stays deleted
+        assertEquals(CHUNK_SIZE, deleted);
+        verify(transactionManager).commit(any());
+        verify(transactionManager).rollback(any());
+    }
+
+    private IdempotencyCleanUpJob cleanUpJob(String mode) {
+        return new IdempotencyCleanUpJob(idempotencyRepository, transactionManager, consumerLagProbe, new CleanUpMetrics(meterRegistry),
+            mode, CHUNK_SIZE, 0, 1, MAX_LAG, 500, 60);
+    }
+}
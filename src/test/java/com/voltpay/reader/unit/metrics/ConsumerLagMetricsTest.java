@@ -0,0 +1,53 @@
+package com.voltpay.reader.unit.metrics;
+
+import com.voltpay.reader.consumer.ConsumerLagProbe;
+import com.voltpay.reader.metrics.ConsumerLagMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConsumerLagMetricsTest {
+
+    private ConsumerLagProbe consumerLagProbe;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ConsumerLagMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        consumerLagProbe = mock(ConsumerLagProbe.class);
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new ConsumerLagMetrics(consumerLagProbe, meterRegistry);
+    }
+
+    @Test
+    public void given_lagPerPartition_when_refresh_then_gaugePerPartition() {
+        // GIVEN
+        when(consumerLagProbe.lag()).thenReturn(Map.of(new TopicPartition("read-topic", 0), 10L, new TopicPartition("read-topic", 1), 0L));
+        // WHEN
+        metrics.refresh();
+        // THEN
+        assertEquals(10, meterRegistry.get("reader.consumer.lag").tag("partition", "0").gauge().value());
+        assertEquals(0, meterRegistry.get("reader.consumer.lag").tag("partition", "1").gauge().value());
+    }
+
+    @Test
+    public void given_lagCouldNotBeRead_when_refresh_then_keepLastValues() {
+        // GIVEN
+        when(consumerLagProbe.lag()).thenReturn(Map.of(new TopicPartition("read-topic", 0), 10L));
+        metrics.refresh();
+        when(consumerLagProbe.lag()).thenReturn(Map.of());
+        // WHEN
+        metrics.refresh();
+        // THEN
+        assertEquals(10, meterRegistry.get("reader.consumer.lag").tag("partition", "0").gauge().value());
+    }
+}
@@ -0,0 +1,55 @@
+package com.voltpay.reader.unit.resolvers;
+
+import com.voltpay.reader.pojo.CustomerSummary;
+import com.voltpay.reader.pojo.SummaryTotal;
+import com.voltpay.reader.repositories.CustomerSummaryRepository;
+import com.voltpay.reader.resolvers.CustomerSummaryResolver;
+import com.voltpay.reader.resolvers.InvalidArgumentException;
+import com.voltpay.reader.utils.Currency;
+import com.voltpay.reader.utils.TrnStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class CustomerSummaryResolverTest {
+
+    private static final Long CUST_ID = 1L;
+
+    private CustomerSummaryRepository customerSummaryRepository;
+
+    private CustomerSummaryResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        customerSummaryRepository = mock(CustomerSummaryRepository.class);
+        resolver = new CustomerSummaryResolver(customerSummaryRepository);
+    }
+
+    @Test
+    public void given_month_when_customerSummary_then_returnTotalsOfMonth() {
+        // GIVEN
+        List<SummaryTotal> totals = List.of(
+            new SummaryTotal(Currency.EUR.toString(), TrnStatus.SUCCESS.getValue(), 2, BigDecimal.TEN));
+        when(customerSummaryRepository.findByCustIdAndMonth(CUST_ID, YearMonth.of(2025, 5))).thenReturn(totals);
+        // WHEN
+        CustomerSummary summary = resolver.customerSummary(CUST_ID, "2025-05");
+        // THEN
+        assertEquals(new CustomerSummary(CUST_ID, "2025-05", totals), summary);
+    }
+
+    @Test
+    public void given_invalidMonth_when_customerSummary_then_throwBadRequest() {
+        // GIVEN WHEN THEN
+        assertThrows(InvalidArgumentException.class, () -> resolver.customerSummary(CUST_ID, "2025-5"));
+        verifyNoInteractions(customerSummaryRepository);
+    }
+}
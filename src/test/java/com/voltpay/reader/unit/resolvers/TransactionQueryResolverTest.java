@@ -0,0 +1,255 @@
+package com.voltpay.reader.unit.resolvers;
+
+import com.voltpay.reader.cache.CustomerTransactionCache;
+import com.voltpay.reader.pojo.CustomerTransactions;
+import com.voltpay.reader.pojo.TransactionConnection;
+import com.voltpay.reader.pojo.TransactionCursor;
+import com.voltpay.reader.pojo.TransactionEdge;
+import com.voltpay.reader.pojo.TransactionFilter;
+import com.voltpay.reader.pojo.TransactionView;
+import com.voltpay.reader.repositories.TransactionColumn;
+import com.voltpay.reader.repositories.TransactionQueryRepository;
+import com.voltpay.reader.resolvers.InvalidArgumentException;
+import com.voltpay.reader.resolvers.TransactionQueryResolver;
+import graphql.GraphQLContext;
+import graphql.schema.DataFetchingFieldSelectionSet;
+import graphql.schema.SelectedField;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.graphql.execution.DefaultBatchLoaderRegistry;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class TransactionQueryResolverTest {
+
+    private static final Long CUST_ID = 1L;
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2025, 5, 1, 10, 0);
+    private static final int DEFAULT_PAGE_SIZE = 2;
+    private static final int MAX_PAGE_SIZE = 3;
+    private static final int MAX_LIST_SIZE = 10;
+    private static final int MAX_CUSTOMERS_PER_QUERY = 3;
+    private static final int EXPORT_MAX_PAGE_SIZE = 20;
+    private static final int EXPORT_MAX_WINDOW_DAYS = 31;
+    private static final String NODE_FIELDS = "edges/node/*";
+    private static final Set<TransactionColumn> CURSOR_COLUMNS = EnumSet.of(TransactionColumn.ID, TransactionColumn.CREATED_AT);
+
+    private TransactionQueryRepository transactionQueryRepository;
+
+    private TransactionQueryResolver resolver;
+
+    private DataLoader<TransactionQueryResolver.CustomerQuery, List<TransactionView>> customerTransactions;
+
+    @BeforeEach
+    void setUp() {
+        transactionQueryRepository = mock(TransactionQueryRepository.class);
+        // caching is covered by its own test
+        CustomerTransactionCache cache = new CustomerTransactionCache(new SimpleMeterRegistry(), false, 1, 1, Duration.ofSeconds(1), Duration.ZERO);
+        BatchLoaderRegistry batchLoaderRegistry = new DefaultBatchLoaderRegistry();
+        resolver = new TransactionQueryResolver(transactionQueryRepository, cache, batchLoaderRegistry, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE,
+            MAX_LIST_SIZE, MAX_CUSTOMERS_PER_QUERY, EXPORT_MAX_PAGE_SIZE, EXPORT_MAX_WINDOW_DAYS);
+        // same as done for every GraphQL request
+        DataLoaderRegistry dataLoaderRegistry = new DataLoaderRegistry();
+        batchLoaderRegistry.registerDataLoaders(dataLoaderRegistry, GraphQLContext.newContext().build());
+        customerTransactions = dataLoaderRegistry.getDataLoader("customerTransactions");
+    }
+
+    @Test
+    public void given_moreTransactionsThanPage_when_transactionsByCustId_then_returnPageWithNextCursor() {
+        // GIVEN
+        List<TransactionView> transactions = List.of(buildTransaction("id3", 3), buildTransaction("id2", 2), buildTransaction("id1", 1));
+        when(transactionQueryRepository.findByCustId(CUST_ID, CURSOR_COLUMNS, TransactionFilter.NONE, null, DEFAULT_PAGE_SIZE + 1))
+            .thenReturn(transactions);
+        // WHEN
+        TransactionConnection connection = resolver.transactionsByCustId(CUST_ID, null, null, null, selection(NODE_FIELDS));
+        // THEN the extra transaction is only used to know there is a next page
+        assertEquals(List.of("id3", "id2"), connection.edges().stream().map(edge -> edge.node().id()).toList());
+        assertTrue(connection.pageInfo().hasNextPage());
+        TransactionEdge last = connection.edges().get(1);
+        assertEquals(last.cursor(), connection.pageInfo().endCursor());
+        assertEquals(new TransactionCursor(CREATED_AT.minusMinutes(2), "id2"), TransactionCursor.decode(last.cursor()));
+    }
+
+    @Test
+    public void given_cursor_when_transactionsByCustId_then_continueAfterItAndCapPageSize() {
+        // GIVEN
+        TransactionCursor after = new TransactionCursor(CREATED_AT, "id3");
+        when(transactionQueryRepository.findByCustId(CUST_ID, CURSOR_COLUMNS, TransactionFilter.NONE, after, MAX_PAGE_SIZE + 1))
+            .thenReturn(List.of(buildTransaction("id2", 2)));
+        // WHEN
+        TransactionConnection connection = resolver.transactionsByCustId(CUST_ID, null, 1000, after.encode(), selection(NODE_FIELDS));
+        // THEN
+        assertEquals(1, connection.edges().size());
+        assertFalse(connection.pageInfo().hasNextPage());
+        verify(transactionQueryRepository).findByCustId(CUST_ID, CURSOR_COLUMNS, TransactionFilter.NONE, after, MAX_PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void given_noTransactions_when_transactionsByCustId_then_returnEmptyPage() {
+        // GIVEN
+        when(transactionQueryRepository.findByCustId(any(), any(), any(), any(), anyInt())).thenReturn(List.of());
+        // WHEN
+        TransactionConnection connection = resolver.transactionsByCustId(CUST_ID, null, 1, null, selection(NODE_FIELDS));
+        // THEN
+        assertTrue(connection.edges().isEmpty());
+        assertFalse(connection.pageInfo().hasNextPage());
+        assertNull(connection.pageInfo().endCursor());
+    }
+
+    @Test
+    public void given_invalidArguments_when_transactionsByCustId_then_throwWithoutQuerying() {
+        // GIVEN WHEN THEN
+        assertThrows(InvalidArgumentException.class, () -> resolver.transactionsByCustId(CUST_ID, null, 0, null, selection(NODE_FIELDS)));
+        assertThrows(InvalidArgumentException.class,
+            () -> resolver.transactionsByCustId(CUST_ID, null, 1, "not-a-cursor", selection(NODE_FIELDS)));
+        assertThrows(InvalidArgumentException.class,
+            () -> resolver.transactionsByCustId(CUST_ID, null, 1, "not base64!", selection(NODE_FIELDS)));
+        verifyNoInteractions(transactionQueryRepository);
+    }
+
+    @Test
+    public void given_selectedFields_when_transactionsByCustId_then_readOnlyTheirColumns() {
+        // GIVEN
+        when(transactionQueryRepository.findByCustId(any(), any(), any(), any(), anyInt())).thenReturn(List.of());
+        // WHEN
+        resolver.transactionsByCustId(CUST_ID, null, null, null, selection(NODE_FIELDS, "amount", "custId", "__typename"));
+        // THEN comment and the other columns which weren't selected aren't read
+        verify(transactionQueryRepository).findByCustId(CUST_ID, EnumSet.of(TransactionColumn.ID, TransactionColumn.CREATED_AT,
+            TransactionColumn.AMOUNT, TransactionColumn.CUST_ID), TransactionFilter.NONE, null, DEFAULT_PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void given_custId_when_transactionByCustId_then_capResults() {
+        // GIVEN
+        Set<TransactionColumn> columns = EnumSet.of(TransactionColumn.ID, TransactionColumn.CREATED_AT, TransactionColumn.COMMENT);
+        when(transactionQueryRepository.findByCustIds(Set.of(CUST_ID), columns, TransactionFilter.NONE, MAX_LIST_SIZE))
+            .thenReturn(Map.of(CUST_ID, List.of(buildTransaction("id1", 1))));
+        // WHEN
+        CompletableFuture<List<TransactionView>> transactions = resolver.transactionByCustId(CUST_ID, null,
+            selection("*", "comment", "createdAt"), customerTransactions);
+        customerTransactions.dispatchAndJoin();
+        // THEN
+        assertEquals(1, transactions.join().size());
+    }
+
+    @Test
+    public void given_aliasedCustomers_when_transactionByCustId_then_loadWithOneQuery() {
+        // GIVEN
+        when(transactionQueryRepository.findByCustIds(any(), any(), any(), anyInt()))
+            .thenReturn(Map.of(CUST_ID, List.of(buildTransaction("id1", 1))));
+        // WHEN
+        CompletableFuture<List<TransactionView>> first = resolver.transactionByCustId(CUST_ID, null, selection("*"), customerTransactions);
+        CompletableFuture<List<TransactionView>> second = resolver.transactionByCustId(2L, null, selection("*"), customerTransactions);
+        customerTransactions.dispatchAndJoin();
+        // THEN a customer without transactions gets an empty list
+        assertEquals(1, first.join().size());
+        assertTrue(second.join().isEmpty());
+        verify(transactionQueryRepository).findByCustIds(Set.of(CUST_ID, 2L), CURSOR_COLUMNS, TransactionFilter.NONE, MAX_LIST_SIZE);
+    }
+
+    @Test
+    public void given_custIds_when_transactionsByCustIds_then_returnInRequestedOrder() {
+        // GIVEN
+        when(transactionQueryRepository.findByCustIds(any(), any(), any(), anyInt()))
+            .thenReturn(Map.of(CUST_ID, List.of(buildTransaction("id1", 1)), 2L, List.of(buildTransaction("id2", 2))));
+        // WHEN
+        CompletableFuture<List<CustomerTransactions>> result = resolver.transactionsByCustIds(List.of(2L, CUST_ID, 3L), null,
+            selection("transactions/*", "amount"), customerTransactions);
+        customerTransactions.dispatchAndJoin();
+        // THEN
+        assertEquals(List.of(2L, CUST_ID, 3L), result.join().stream().map(CustomerTransactions::custId).toList());
+        assertEquals(List.of(1, 1, 0), result.join().stream().map(customer -> customer.transactions().size()).toList());
+        verify(transactionQueryRepository).findByCustIds(Set.of(CUST_ID, 2L, 3L), EnumSet.of(TransactionColumn.ID,
+            TransactionColumn.CREATED_AT, TransactionColumn.AMOUNT), TransactionFilter.NONE, MAX_LIST_SIZE);
+    }
+
+    @Test
+    public void given_tooManyCustomers_when_transactionsByCustIds_then_throwWithoutQuerying() {
+        // GIVEN WHEN THEN
+        assertThrows(InvalidArgumentException.class, () -> resolver.transactionsByCustIds(List.of(1L, 2L, 3L, 4L), null,
+            selection("transactions/*"), customerTransactions));
+        verifyNoInteractions(transactionQueryRepository);
+    }
+
+    @Test
+    public void given_filter_when_transactionsByCustId_then_passItToRepository() {
+        // GIVEN
+        TransactionFilter filter = new TransactionFilter(CREATED_AT.minusDays(30), CREATED_AT, 1, "BWI", "EUR");
+        when(transactionQueryRepository.findByCustId(any(), any(), any(), any(), anyInt())).thenReturn(List.of());
+        // WHEN
+        resolver.transactionsByCustId(CUST_ID, filter, null, null, selection(NODE_FIELDS));
+        // THEN
+        verify(transactionQueryRepository).findByCustId(CUST_ID, CURSOR_COLUMNS, filter, null, DEFAULT_PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void given_fromNotBeforeTo_when_createFilter_then_throw() {
+        // GIVEN WHEN THEN
+        assertThrows(InvalidArgumentException.class, () -> new TransactionFilter(CREATED_AT, CREATED_AT, null, null, null));
+    }
+
+    @Test
+    public void given_window_when_allTransactions_then_returnPageOldestFirst() {
+        // GIVEN
+        TransactionFilter filter = new TransactionFilter(CREATED_AT.minusDays(EXPORT_MAX_WINDOW_DAYS), CREATED_AT, null, null, "EUR");
+        TransactionCursor after = new TransactionCursor(CREATED_AT.minusDays(1), "id0");
+        when(transactionQueryRepository.findAll(CURSOR_COLUMNS, filter, after, EXPORT_MAX_PAGE_SIZE + 1))
+            .thenReturn(List.of(buildTransaction("id2", 2), buildTransaction("id1", 1)));
+        // WHEN
+        TransactionConnection connection = resolver.allTransactions(filter, 100, after.encode(), selection(NODE_FIELDS));
+        // THEN
+        assertEquals(List.of("id2", "id1"), connection.edges().stream().map(edge -> edge.node().id()).toList());
+        assertFalse(connection.pageInfo().hasNextPage());
+    }
+
+    @Test
+    public void given_missingOrTooLongWindow_when_allTransactions_then_throwWithoutQuerying() {
+        // GIVEN
+        TransactionFilter noFrom = new TransactionFilter(null, CREATED_AT, null, null, null);
+        TransactionFilter noTo = new TransactionFilter(CREATED_AT, null, null, null, null);
+        TransactionFilter tooLong = new TransactionFilter(CREATED_AT.minusDays(EXPORT_MAX_WINDOW_DAYS + 1), CREATED_AT, null, null, null);
+        // WHEN THEN
+        assertThrows(InvalidArgumentException.class, () -> resolver.allTransactions(noFrom, null, null, selection(NODE_FIELDS)));
+        assertThrows(InvalidArgumentException.class, () -> resolver.allTransactions(noTo, null, null, selection(NODE_FIELDS)));
+        assertThrows(InvalidArgumentException.class, () -> resolver.allTransactions(tooLong, null, null, selection(NODE_FIELDS)));
+        verifyNoInteractions(transactionQueryRepository);
+    }
+
+    private static DataFetchingFieldSelectionSet selection(String glob, String... fields) {
+        List<SelectedField> selectedFields = Arrays.stream(fields).map(name -> {
+            SelectedField field = mock(SelectedField.class);
+            when(field.getName()).thenReturn(name);
+            return field;
+        }).toList();
+        DataFetchingFieldSelectionSet selectionSet = mock(DataFetchingFieldSelectionSet.class);
+        when(selectionSet.getFields(glob)).thenReturn(selectedFields);
+        return selectionSet;
+    }
+
+    private static TransactionView buildTransaction(String id, int minutesAgo) {
+        return new TransactionView(id, CREATED_AT.minusMinutes(minutesAgo), CREATED_AT, BigDecimal.TEN, 1, "EUR", CUST_ID, "BWI", null, 1);
+    }
+}
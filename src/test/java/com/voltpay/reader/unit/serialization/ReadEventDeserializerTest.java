@@ -0,0 +1,138 @@
+package com.voltpay.reader.unit.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.voltpay.reader.config.KafkaConfig;
+import com.voltpay.reader.pojo.ReadEvent;
+import com.voltpay.reader.serialization.ReadEventBinaryCodec;
+import com.voltpay.reader.serialization.ReadEventDeserializationException;
+import com.voltpay.reader.serialization.ReadEventDeserializer;
+import com.voltpay.reader.serialization.ReadEventEncoding;
+import com.voltpay.reader.serialization.ReadEventErrorHandlingDeserializer;
+import com.voltpay.reader.serialization.ReadEventSerializer;
+import com.voltpay.reader.utils.Currency;
+import com.voltpay.reader.utils.TrnStatus;
+import com.voltpay.reader.utils.TrnType;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadEventDeserializerTest {
+
+    private static final String TOPIC = "read-topic";
+
+    private final ReadEventDeserializer deserializer = new ReadEventDeserializer();
+
+    @Test
+    public void given_eventFromWriter_when_deserialize_then_sameEvent() throws Exception {
+        // GIVEN the writer's mapper writes the dates as arrays and leaves out zero seconds
+        ObjectMapper objectMapper = new KafkaConfig().objectMapper();
+        ReadEvent event = buildReadEvent();
+        ByteBuffer data = ByteBuffer.wrap(objectMapper.writeValueAsBytes(event));
+        // WHEN
+        ReadEvent result = deserializer.deserialize(TOPIC, new RecordHeaders(), data);
+        // THEN
+        assertEquals(event, result);
+        assertEquals(0, data.position());
+    }
+
+    @Test
+    public void given_binaryEncoding_when_deserialize_then_sameEventInFewerBytes() {
+        // GIVEN a record which was JSON before, e.g. a DLT record which keeps the original headers
+        ReadEvent event = buildReadEvent();
+        RecordHeaders headers = new RecordHeaders();
+        ReadEventEncoding.JSON.writeTo(headers);
+        byte[] json;
+        byte[] binary;
+        try (ReadEventSerializer jsonSerializer = new ReadEventSerializer(ReadEventEncoding.JSON, new KafkaConfig().objectMapper());
+             ReadEventSerializer binarySerializer = new ReadEventSerializer(ReadEventEncoding.BINARY, new KafkaConfig().objectMapper())) {
+            json = jsonSerializer.serialize(TOPIC, new RecordHeaders(), event);
+            binary = binarySerializer.serialize(TOPIC, headers, event);
+        }
+        // WHEN
+        ReadEvent result = deserializer.deserialize(TOPIC, headers, ByteBuffer.wrap(binary));
+        // THEN
+        assertEquals(event, result);
+        assertEquals(ReadEventEncoding.BINARY, ReadEventEncoding.of(headers));
+        assertTrue(binary.length * 2 < json.length);
+    }
+
+    @Test
+    public void given_unknownSchemaVersion_when_deserializeBinary_then_throwTyped() {
+        // GIVEN
+        RecordHeaders headers = new RecordHeaders();
+        ReadEventEncoding.BINARY.writeTo(headers);
+        byte[] binary = ReadEventBinaryCodec.encode(buildReadEvent());
+        binary[0] = 2;
+        byte[] truncated = Arrays.copyOf(ReadEventBinaryCodec.encode(buildReadEvent()), 10);
+        // WHEN THEN
+        assertThrows(ReadEventDeserializationException.class, () -> deserializer.deserialize(TOPIC, headers, ByteBuffer.wrap(binary)));
+        assertThrows(ReadEventDeserializationException.class, () -> deserializer.deserialize(TOPIC, headers, ByteBuffer.wrap(truncated)));
+    }
+
+    @Test
+    public void given_isoDatesAndUnknownFields_when_deserialize_then_skipUnknown() {
+        // GIVEN
+        String json = """
+            {"messageId":"msg","createdAt":"2025-05-03T10:15:30","extra":{"nested":[1,2]},"amount":"10.5","comment":null}
+            """;
+        // WHEN
+        ReadEvent result = deserializer.deserialize(TOPIC, json.getBytes(StandardCharsets.UTF_8));
+        // THEN
+        assertEquals(ReadEvent.builder().messageId("msg").createdAt(LocalDateTime.of(2025, 5, 3, 10, 15, 30))
+            .amount(new BigDecimal("10.5")).build(), result);
+    }
+
+    @Test
+    public void given_malformedEvent_when_deserialize_then_throwTyped() {
+        // GIVEN
+        byte[] wrongType = "{\"messageId\":\"msg\",\"custId\":\"abc\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] truncated = "{\"messageId\":\"msg\",".getBytes(StandardCharsets.UTF_8);
+        byte[] notObject = "[1,2]".getBytes(StandardCharsets.UTF_8);
+        // WHEN THEN
+        assertThrows(ReadEventDeserializationException.class, () -> deserializer.deserialize(TOPIC, wrongType));
+        assertThrows(ReadEventDeserializationException.class, () -> deserializer.deserialize(TOPIC, truncated));
+        assertThrows(ReadEventDeserializationException.class, () -> deserializer.deserialize(TOPIC, notObject));
+    }
+
+    @Test
+    public void given_malformedEvent_when_errorHandlingDeserialize_then_headerForDeadLetter() {
+        // GIVEN
+        RecordHeaders headers = new RecordHeaders();
+        ByteBuffer data = ByteBuffer.wrap("not json".getBytes(StandardCharsets.UTF_8));
+        try (ReadEventErrorHandlingDeserializer errorHandlingDeserializer = new ReadEventErrorHandlingDeserializer()) {
+            // WHEN
+            ReadEvent result = errorHandlingDeserializer.deserialize(TOPIC, headers, data);
+            // THEN the container turns the header into a DeserializationException with the original bytes
+            assertNull(result);
+            assertNotNull(headers.lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER));
+        }
+    }
+
+    private static ReadEvent buildReadEvent() {
+        return ReadEvent.builder()
+            .messageId("msg")
+            .id("id")
+            .createdAt(LocalDateTime.of(2025, 5, 3, 10, 15))
+            .updatedAt(LocalDateTime.of(2025, 5, 3, 10, 15, 30, 123456789))
+            .amount(new BigDecimal("12.345678"))
+            .status(TrnStatus.FAIL.getValue())
+            .currency(Currency.EUR.toString())
+            .custId(1L)
+            .type(TrnType.BWI.toString())
+            .comment("a \"quoted\" comment")
+            .version(3)
+            .build();
+    }
+}
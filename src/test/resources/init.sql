@@ -14,7 +14,60 @@ CREATE TABLE IF NOT EXISTS read.transaction (
               PRIMARY KEY (id, created_at)
               );
 
+CREATE INDEX IF NOT EXISTS idx_transaction_cust_id_created_at ON read.transaction (cust_id, created_at);
+
+CREATE INDEX IF NOT EXISTS idx_transaction_created_at ON read.transaction (created_at);
+
+CREATE TABLE IF NOT EXISTS read.customer_summary (
+  cust_id BIGINT NOT NULL,
+  month DATE NOT NULL,
+  currency VARCHAR(3) NOT NULL,
+  status INTEGER NOT NULL,
+  tx_count BIGINT NOT NULL,
+  total_amount NUMERIC(30, 6) NOT NULL,
+  PRIMARY KEY (cust_id, month, currency, status)
+  );
+
+-- the old row is taken out of its totals and the new one added, so a version update moving the amount or status is counted once
+CREATE OR REPLACE FUNCTION read.update_customer_summary() RETURNS trigger AS $$
+BEGIN
+  IF TG_OP IN ('UPDATE', 'DELETE') THEN
+    UPDATE read.customer_summary
+    SET tx_count = tx_count - 1, total_amount = total_amount - COALESCE(OLD.amount, 0)
+    WHERE cust_id = OLD.cust_id AND month = date_trunc('month', OLD.created_at)::date
+      AND currency = OLD.currency AND status = OLD.status;
+  END IF;
+  IF TG_OP IN ('INSERT', 'UPDATE') THEN
+    INSERT INTO read.customer_summary AS summary (cust_id, month, currency, status, tx_count, total_amount)
+    VALUES (NEW.cust_id, date_trunc('month', NEW.created_at)::date, NEW.currency, NEW.status, 1, COALESCE(NEW.amount, 0))
+    ON CONFLICT (cust_id, month, currency, status)
+    DO UPDATE SET tx_count = summary.tx_count + 1, total_amount = summary.total_amount + EXCLUDED.total_amount;
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- fires only for rows which were written, a message stopped by read.idempotency doesn't touch the totals
+CREATE OR REPLACE TRIGGER trg_transaction_customer_summary_insert_delete
+AFTER INSERT OR DELETE ON read.transaction
+FOR EACH ROW EXECUTE FUNCTION read.update_customer_summary();
+
+-- updates which don't change the totals, e.g. only the comment, are skipped
+CREATE OR REPLACE TRIGGER trg_transaction_customer_summary_update
+AFTER UPDATE ON read.transaction
+FOR EACH ROW
+WHEN (OLD.amount IS DISTINCT FROM NEW.amount OR OLD.status IS DISTINCT FROM NEW.status
+  OR OLD.currency IS DISTINCT FROM NEW.currency OR OLD.cust_id IS DISTINCT FROM NEW.cust_id)
+EXECUTE FUNCTION read.update_customer_summary();
+
  CREATE TABLE IF NOT EXISTS read.idempotency (
-     id VARCHAR(255) PRIMARY KEY,
-     date DATE
- );
\ No newline at end of file
+     id VARCHAR(255) NOT NULL,
+     date DATE NOT NULL,
+     kafka_partition INTEGER,
+     PRIMARY KEY (id, date)
+ ) PARTITION BY RANGE (date);
+
+ -- pg_partman is not available in the test container, every record goes to the default partition
+ CREATE TABLE IF NOT EXISTS read.idempotency_default PARTITION OF read.idempotency DEFAULT;
+
+ CREATE INDEX IF NOT EXISTS idx_idempotency_date ON read.idempotency (date);